@@ -0,0 +1,159 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Alphabets, permutations, rotors, machines, and messages of given
+ * sizes, built at random from a seed, for the benchmarks.
+ *
+ * @author Yuanshan Chen
+ */
+class Fixtures {
+
+    /**
+     * Return an alphabet of SIZE characters: the upper-case letters,
+     * followed if necessary by characters from U+0100 on.
+     */
+    static Alphabet alphabet(int size) {
+        StringBuilder chars = new StringBuilder();
+        for (int k = 0; k < size; k += 1) {
+            chars.append((char) (k < LETTERS ? 'A' + k : 0x100 + k));
+        }
+        return new Alphabet(chars.toString());
+    }
+
+    /**
+     * Return the cycles of a random permutation of ALPHA chosen by RAND.
+     */
+    static String cycles(Alphabet alpha, Random rand) {
+        int[] order = shuffle(alpha.size(), rand);
+        StringBuilder result = new StringBuilder();
+        int k = 0;
+        while (k < order.length) {
+            int len = 1 + rand.nextInt(Math.min(order.length - k, CYCLE));
+            result.append('(');
+            for (int i = k; i < k + len; i += 1) {
+                result.append(alpha.toChar(order[i]));
+            }
+            result.append(')');
+            k += len;
+        }
+        return result.toString();
+    }
+
+    /**
+     * Return the cycles of a random pairing of the characters of ALPHA,
+     * whose size must be even, chosen by RAND.
+     */
+    static String pairs(Alphabet alpha, Random rand) {
+        int[] order = shuffle(alpha.size(), rand);
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k + 1 < order.length; k += 2) {
+            result.append('(').append(alpha.toChar(order[k]))
+                .append(alpha.toChar(order[k + 1])).append(')');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Return a moving rotor named NAME on ALPHA with a random wiring and
+     * one random notch, chosen by RAND.
+     */
+    static MovingRotor movingRotor(String name, Alphabet alpha,
+                                   Random rand) {
+        Permutation perm = new Permutation(cycles(alpha, rand), alpha);
+        String notch = String.valueOf(alpha.toChar(rand.nextInt(
+                                                       alpha.size())));
+        return new MovingRotor(name, perm, notch);
+    }
+
+    /**
+     * Return a machine on an alphabet of ALPHABETSIZE characters (which
+     * must be even) with a reflector and NUMROTORS - 1 moving rotors,
+     * all wired at random from SEED, at setting 0 with an empty
+     * plugboard.
+     */
+    static Machine machine(int alphabetSize, int numRotors, long seed) {
+        Random rand = new Random(seed);
+        Alphabet alpha = alphabet(alphabetSize);
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        String[] names = new String[numRotors];
+        names[0] = "R";
+        rotors.add(new Reflector("R", new Permutation(pairs(alpha, rand),
+                                                      alpha)));
+        for (int k = 1; k < numRotors; k += 1) {
+            names[k] = "M" + k;
+            rotors.add(movingRotor(names[k], alpha, rand));
+        }
+        Machine m = new Machine(alpha, numRotors, numRotors - 1, rotors);
+        m.insertRotors(names);
+        StringBuilder setting = new StringBuilder();
+        for (int k = 1; k < numRotors; k += 1) {
+            setting.append(alpha.toChar(0));
+        }
+        m.setRotors(setting.toString());
+        m.setPlugboard(new Permutation("", alpha));
+        return m;
+    }
+
+    /**
+     * Return LENGTH random indices into an alphabet of SIZE characters,
+     * chosen by RAND.
+     */
+    static int[] indices(int size, int length, Random rand) {
+        int[] result = new int[length];
+        for (int k = 0; k < length; k += 1) {
+            result[k] = rand.nextInt(size);
+        }
+        return result;
+    }
+
+    /**
+     * Return a message of LENGTH random characters of ALPHA, chosen by
+     * RAND, in groups of five as Main prints them.
+     */
+    static String message(Alphabet alpha, int length, Random rand) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < length; k += 1) {
+            if (k > 0 && k % GROUP == 0) {
+                result.append(' ');
+            }
+            result.append(alpha.toChar(rand.nextInt(alpha.size())));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Return a random ordering of 0 .. N-1 chosen by RAND.
+     */
+    private static int[] shuffle(int n, Random rand) {
+        int[] result = new int[n];
+        for (int k = 0; k < n; k += 1) {
+            result[k] = k;
+        }
+        for (int k = n - 1; k > 0; k -= 1) {
+            int j = rand.nextInt(k + 1);
+            int t = result[k];
+            result[k] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /**
+     * Number of upper-case letters.
+     */
+    private static final int LETTERS = 26;
+
+    /**
+     * Longest cycle in a random permutation.
+     */
+    private static final int CYCLE = 8;
+
+    /**
+     * Characters in a group of message text.
+     */
+    private static final int GROUP = 5;
+
+}
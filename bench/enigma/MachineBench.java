@@ -0,0 +1,111 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of Machine.convert on a message, a character at a time and
+ * as a String, in time per message.  The machine is not reset between
+ * messages, so its rotors move through their whole period.
+ *
+ * @author Yuanshan Chen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MachineBench {
+
+    /**
+     * Number of characters in the alphabet.
+     */
+    @Param({ "26", "256" })
+    public int alphabetSize;
+
+    /**
+     * Number of rotor slots, including the reflector's.
+     */
+    @Param({ "3", "5", "8" })
+    public int numRotors;
+
+    /**
+     * Number of characters in the message.
+     */
+    @Param({ "64", "4096", "262144" })
+    public int messageLength;
+
+    /**
+     * Engine of the machine (see Machine.setEngine).
+     */
+    @Param({ "direct", "composite", "table", "tree" })
+    public String engine;
+
+    /**
+     * Build a random machine and message.
+     */
+    @Setup
+    public void setUp() {
+        Random rand = new Random(SEED);
+        _machine = Fixtures.machine(alphabetSize, numRotors, SEED);
+        _machine.setEngine(engine);
+        _indices = Fixtures.indices(alphabetSize, messageLength, rand);
+        _message = Fixtures.message(_machine.alphabet(), messageLength,
+                                    rand);
+    }
+
+    /**
+     * Return the sum of the conversions of my message's characters, one
+     * at a time.
+     */
+    @Benchmark
+    public int convertInt() {
+        int sum = 0;
+        for (int x : _indices) {
+            sum += _machine.convert(x);
+        }
+        return sum;
+    }
+
+    /**
+     * Return the conversion of my message as a String.
+     */
+    @Benchmark
+    public String convertString() {
+        return _machine.convert(_message);
+    }
+
+    /**
+     * Seed of the random wirings and messages.
+     */
+    private static final long SEED = 61;
+
+    /**
+     * The machine measured.
+     */
+    private Machine _machine;
+
+    /**
+     * The message as indices.
+     */
+    private int[] _indices;
+
+    /**
+     * The message as text, in groups of five.
+     */
+    private String _message;
+
+}
@@ -0,0 +1,89 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of whole runs of Main, from reading the configuration to
+ * printing the last message, over the inputs in testing/correct.  Each
+ * input uses the configuration test-correct would give it.  The
+ * directory of inputs is the system property enigma.testing, by
+ * default testing/correct; output is discarded.
+ *
+ * @author Yuanshan Chen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MainBench {
+
+    /**
+     * Name of the input, without its .in suffix.
+     */
+    @Param({ "carroll", "carroll1-ring", "newchars", "reduced",
+             "reflectC", "step", "testmore", "trivial", "trivial1" })
+    public String input;
+
+    /**
+     * Find the input and its configuration.
+     */
+    @Setup
+    public void setUp() {
+        Path dir = Paths.get(System.getProperty("enigma.testing",
+                                                "testing/correct"));
+        Path config = dir.resolve(input + ".conf");
+        if (!Files.exists(config)) {
+            config = dir.resolve("default.conf");
+        }
+        _args = new String[] { config.toString(),
+                               dir.resolve(input + ".in").toString() };
+    }
+
+    /**
+     * Run Main on my input.
+     */
+    @Benchmark
+    public void run() {
+        Main main = new Main(_args, null, NO_INPUT, NO_OUTPUT);
+        main.process();
+        main.close();
+    }
+
+    /**
+     * Standard input given to Main, which does not read it.
+     */
+    private static final ByteArrayInputStream NO_INPUT =
+        new ByteArrayInputStream(new byte[0]);
+
+    /**
+     * Standard output given to Main.
+     */
+    private static final PrintStream NO_OUTPUT =
+        new PrintStream(OutputStream.nullOutputStream());
+
+    /**
+     * Arguments to Main.
+     */
+    private String[] _args;
+
+}
@@ -0,0 +1,96 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of Permutation.permute and Permutation.invert, in time per
+ * character.
+ *
+ * @author Yuanshan Chen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermutationBench {
+
+    /**
+     * Number of characters in the alphabet.
+     */
+    @Param({ "26", "64", "256", "4096" })
+    public int alphabetSize;
+
+    /**
+     * Build a random permutation and the characters to apply it to.
+     */
+    @Setup
+    public void setUp() {
+        Random rand = new Random(SEED);
+        Alphabet alpha = Fixtures.alphabet(alphabetSize);
+        _perm = new Permutation(Fixtures.cycles(alpha, rand), alpha);
+        _inputs = Fixtures.indices(alphabetSize, INPUTS, rand);
+    }
+
+    /**
+     * Return the sum of the permutations of my inputs.
+     */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int permute() {
+        int sum = 0;
+        for (int x : _inputs) {
+            sum += _perm.permute(x);
+        }
+        return sum;
+    }
+
+    /**
+     * Return the sum of the inverse permutations of my inputs.
+     */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int invert() {
+        int sum = 0;
+        for (int x : _inputs) {
+            sum += _perm.invert(x);
+        }
+        return sum;
+    }
+
+    /**
+     * Number of characters converted per invocation.
+     */
+    static final int INPUTS = 1 << 10;
+
+    /**
+     * Seed of the random wirings and inputs.
+     */
+    private static final long SEED = 61;
+
+    /**
+     * The permutation measured.
+     */
+    private Permutation _perm;
+
+    /**
+     * Indices to permute.
+     */
+    private int[] _inputs;
+
+}
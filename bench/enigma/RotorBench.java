@@ -0,0 +1,116 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of Rotor.convertForward, Rotor.convertBackward, and
+ * MovingRotor.atNotch, in time per character.
+ *
+ * @author Yuanshan Chen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotorBench {
+
+    /**
+     * Number of characters in the alphabet.
+     */
+    @Param({ "26", "64", "256", "4096" })
+    public int alphabetSize;
+
+    /**
+     * Build a random rotor, set it away from 0, and choose the
+     * characters to convert.
+     */
+    @Setup
+    public void setUp() {
+        Random rand = new Random(SEED);
+        Alphabet alpha = Fixtures.alphabet(alphabetSize);
+        _rotor = Fixtures.movingRotor("M", alpha, rand);
+        _rotor.compile();
+        _rotor.set(rand.nextInt(alphabetSize));
+        _inputs = Fixtures.indices(alphabetSize, INPUTS, rand);
+    }
+
+    /**
+     * Return the sum of my inputs converted right to left.
+     */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int convertForward() {
+        int sum = 0;
+        for (int x : _inputs) {
+            sum += _rotor.convertForward(x);
+        }
+        return sum;
+    }
+
+    /**
+     * Return the sum of my inputs converted left to right.
+     */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int convertBackward() {
+        int sum = 0;
+        for (int x : _inputs) {
+            sum += _rotor.convertBackward(x);
+        }
+        return sum;
+    }
+
+    /**
+     * Return the number of my inputs that, taken as settings, put the
+     * rotor at a notch.
+     */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int atNotch() {
+        int count = 0;
+        for (int x : _inputs) {
+            _rotor.set(x);
+            if (_rotor.atNotch()) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Number of characters converted per invocation.
+     */
+    static final int INPUTS = 1 << 10;
+
+    /**
+     * Seed of the random wirings and inputs.
+     */
+    private static final long SEED = 61;
+
+    /**
+     * The rotor measured.
+     */
+    private MovingRotor _rotor;
+
+    /**
+     * Indices to convert.
+     */
+    private int[] _inputs;
+
+}
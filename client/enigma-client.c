@@ -0,0 +1,303 @@
+/* enigma-client: run enigma.Main in an EnigmaDaemon without starting a
+ * JVM.
+ *
+ * Usage: enigma-client SOCKET ARGS...
+ *
+ * Takes the socket of the daemon followed by exactly the arguments of
+ * Main, and behaves as Main would: it passes on the standard input,
+ * prints what Main prints, and exits with Main's status.  It does what
+ * enigma.EnigmaClient does, but as a native program, so a run costs a
+ * process start and a socket round trip rather than a JVM startup.
+ *
+ * The protocol is that of EnigmaDaemon.  The request is the client's
+ * working directory, the number of arguments as a big-endian 32-bit
+ * int, and the arguments, each string as written by Java's
+ * DataOutputStream.writeUTF: a big-endian 16-bit byte count followed by
+ * modified UTF-8.  The standard input follows, ended by shutting down
+ * the sending side of the socket.  The reply is a sequence of frames,
+ * each a kind byte (STDOUT_FRAME or STDERR_FRAME) and a big-endian
+ * 32-bit length followed by that many bytes of output, ending with an
+ * EXIT_FRAME byte and a big-endian 32-bit exit status.
+ *
+ * @author Yuanshan Chen
+ */
+
+#include <errno.h>
+#include <fcntl.h>
+#include <limits.h>
+#include <poll.h>
+#include <signal.h>
+#include <stdint.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <sys/socket.h>
+#include <sys/un.h>
+#include <unistd.h>
+
+/* Frame kinds, as in EnigmaDaemon. */
+enum { STDOUT_FRAME = 1, STDERR_FRAME = 2, EXIT_FRAME = 3 };
+
+/* Bytes copied at a time. */
+#define BUFFER_SIZE 65536
+
+/* Longest string writeUTF can send. */
+#define MAX_UTF 65535
+
+/* Name of the daemon's socket, for messages. */
+static const char *socket_name;
+
+/* A growable byte buffer. */
+struct buffer {
+    unsigned char *data;
+    size_t len, cap;
+};
+
+/* Report that the daemon could not be reached, as EnigmaClient does, and
+ * exit with status 1. */
+static void
+unreachable(void)
+{
+    fprintf(stderr, "Error: could not reach daemon on %s\n", socket_name);
+    exit(1);
+}
+
+/* Append the LEN bytes at BYTES to BUF. */
+static void
+put_bytes(struct buffer *buf, const void *bytes, size_t len)
+{
+    if (buf->len + len > buf->cap) {
+        buf->cap = 2 * (buf->len + len);
+        buf->data = realloc(buf->data, buf->cap);
+        if (buf->data == NULL) {
+            fprintf(stderr, "Error: out of memory\n");
+            exit(1);
+        }
+    }
+    memcpy(buf->data + buf->len, bytes, len);
+    buf->len += len;
+}
+
+/* Append the big-endian 32-bit form of N to BUF. */
+static void
+put_int(struct buffer *buf, uint32_t n)
+{
+    unsigned char bytes[4] = { n >> 24, n >> 16, n >> 8, n };
+    put_bytes(buf, bytes, 4);
+}
+
+/* Append the 3-byte modified UTF-8 form of the UTF-16 unit U to BUF. */
+static void
+put_unit(struct buffer *buf, unsigned u)
+{
+    unsigned char bytes[3] = {
+        0xe0 | (u >> 12), 0x80 | ((u >> 6) & 0x3f), 0x80 | (u & 0x3f)
+    };
+    put_bytes(buf, bytes, 3);
+}
+
+/* Append the UTF-8 string S to BUF as writeUTF would write it.  UTF-8
+ * and modified UTF-8 differ only in characters outside the Basic
+ * Multilingual Plane, which modified UTF-8 writes as surrogate pairs,
+ * and in NUL, which cannot occur in S.  Other bytes are passed on as
+ * they are. */
+static void
+put_utf(struct buffer *buf, const char *s)
+{
+    struct buffer utf = { NULL, 0, 0 };
+    const unsigned char *p = (const unsigned char *) s;
+    while (*p != '\0') {
+        if (p[0] >= 0xf0 && p[0] <= 0xf4 && (p[1] & 0xc0) == 0x80
+            && (p[2] & 0xc0) == 0x80 && (p[3] & 0xc0) == 0x80) {
+            uint32_t c = ((p[0] & 0x07) << 18) | ((p[1] & 0x3f) << 12)
+                | ((p[2] & 0x3f) << 6) | (p[3] & 0x3f);
+            c -= 0x10000;
+            put_unit(&utf, 0xd800 + (c >> 10));
+            put_unit(&utf, 0xdc00 + (c & 0x3ff));
+            p += 4;
+        } else {
+            put_bytes(&utf, p, 1);
+            p += 1;
+        }
+    }
+    if (utf.len > MAX_UTF) {
+        fprintf(stderr, "Error: argument too long\n");
+        exit(1);
+    }
+    unsigned char len[2] = { utf.len >> 8, utf.len };
+    put_bytes(buf, len, 2);
+    put_bytes(buf, utf.data, utf.len);
+    free(utf.data);
+}
+
+/* Write the LEN bytes at BYTES to FD, which may be non-blocking, in
+ * full.  Return 0, or -1 on error. */
+static int
+write_all(int fd, const unsigned char *bytes, size_t len)
+{
+    while (len > 0) {
+        ssize_t n = write(fd, bytes, len);
+        if (n < 0) {
+            if (errno == EINTR) {
+                continue;
+            }
+            if (errno == EAGAIN || errno == EWOULDBLOCK) {
+                struct pollfd out = { fd, POLLOUT, 0 };
+                poll(&out, 1, -1);
+                continue;
+            }
+            return -1;
+        }
+        bytes += n;
+        len -= n;
+    }
+    return 0;
+}
+
+/* Return a socket connected to the daemon listening on the socket file
+ * NAME. */
+static int
+connect_daemon(const char *name)
+{
+    struct sockaddr_un address;
+    if (strlen(name) >= sizeof address.sun_path) {
+        unreachable();
+    }
+    memset(&address, 0, sizeof address);
+    address.sun_family = AF_UNIX;
+    strcpy(address.sun_path, name);
+    int sock = socket(AF_UNIX, SOCK_STREAM, 0);
+    if (sock < 0
+        || connect(sock, (struct sockaddr *) &address, sizeof address) < 0) {
+        unreachable();
+    }
+    return sock;
+}
+
+/* The state of the reply: the header of the frame being read, and the
+ * number of bytes of its output not yet read. */
+static unsigned char header[5];
+static size_t header_len;
+static uint32_t output_left;
+
+/* Handle the LEN bytes of reply at BYTES, exiting with Main's status at
+ * the end of the reply. */
+static void
+reply(const unsigned char *bytes, size_t len)
+{
+    while (len > 0) {
+        if (output_left > 0) {
+            size_t n = len < output_left ? len : output_left;
+            int fd = header[0] == STDERR_FRAME ? 2 : 1;
+            if (write_all(fd, bytes, n) < 0) {
+                exit(1);
+            }
+            bytes += n;
+            len -= n;
+            output_left -= n;
+            continue;
+        }
+        header[header_len] = *bytes;
+        header_len += 1;
+        bytes += 1;
+        len -= 1;
+        if (header_len < sizeof header) {
+            continue;
+        }
+        header_len = 0;
+        uint32_t n = ((uint32_t) header[1] << 24) | (header[2] << 16)
+            | (header[3] << 8) | header[4];
+        if (header[0] == EXIT_FRAME) {
+            exit((int) n);
+        }
+        if (header[0] != STDOUT_FRAME && header[0] != STDERR_FRAME) {
+            unreachable();
+        }
+        output_left = n;
+    }
+}
+
+int
+main(int argc, char **argv)
+{
+    if (argc < 2) {
+        fprintf(stderr, "Error: Usage: enigma-client SOCKET ARGS...\n");
+        return 1;
+    }
+    socket_name = argv[1];
+    signal(SIGPIPE, SIG_IGN);
+
+    char cwd[PATH_MAX];
+    if (getcwd(cwd, sizeof cwd) == NULL) {
+        fprintf(stderr, "Error: could not find working directory\n");
+        return 1;
+    }
+    struct buffer request = { NULL, 0, 0 };
+    put_utf(&request, cwd);
+    put_int(&request, argc - 2);
+    for (int i = 2; i < argc; i += 1) {
+        put_utf(&request, argv[i]);
+    }
+
+    int sock = connect_daemon(socket_name);
+    if (write_all(sock, request.data, request.len) < 0) {
+        unreachable();
+    }
+    free(request.data);
+    fcntl(sock, F_SETFL, fcntl(sock, F_GETFL) | O_NONBLOCK);
+
+    /* Copy the standard input to the daemon while handling its reply,
+     * holding at most one buffer of input at a time, so that neither
+     * side waits for the other.  The input is dropped if the daemon
+     * stops reading it. */
+    static unsigned char input[BUFFER_SIZE], output[BUFFER_SIZE];
+    size_t input_start = 0, input_end = 0;
+    int reading = 1;
+    while (1) {
+        struct pollfd fds[2];
+        nfds_t nfds = 1;
+        fds[0].fd = sock;
+        fds[0].events = POLLIN | (input_start < input_end ? POLLOUT : 0);
+        if (reading && input_start == input_end) {
+            fds[1].fd = 0;
+            fds[1].events = POLLIN;
+            nfds = 2;
+        }
+        if (poll(fds, nfds, -1) < 0) {
+            if (errno == EINTR) {
+                continue;
+            }
+            unreachable();
+        }
+        if (nfds == 2 && fds[1].revents != 0) {
+            ssize_t n = read(0, input, sizeof input);
+            if (n > 0) {
+                input_start = 0;
+                input_end = n;
+            } else if (n == 0 || errno != EINTR) {
+                reading = 0;
+                shutdown(sock, SHUT_WR);
+            }
+        }
+        if (fds[0].revents & POLLOUT) {
+            ssize_t n = write(sock, input + input_start,
+                              input_end - input_start);
+            if (n >= 0) {
+                input_start += n;
+            } else if (errno != EAGAIN && errno != EWOULDBLOCK
+                       && errno != EINTR) {
+                input_start = input_end;
+                reading = 0;
+            }
+        }
+        if (fds[0].revents & (POLLIN | POLLHUP | POLLERR)) {
+            ssize_t n = read(sock, output, sizeof output);
+            if (n > 0) {
+                reply(output, n);
+            } else if (n == 0 || (errno != EAGAIN && errno != EWOULDBLOCK
+                                  && errno != EINTR)) {
+                unreachable();
+            }
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package enigma;
 
+import java.util.Arrays;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
 /**
  * An alphabet of encodable characters.  Provides a mapping from characters
  * to and from indices into the alphabet.
@@ -14,6 +19,8 @@ class Alphabet {
      */
     Alphabet(String chars) {
         _chars = chars;
+        _codePoints = chars.codePoints().toArray();
+        compile();
     }
 
     /**
@@ -27,19 +34,21 @@ class Alphabet {
      * Returns the size of the alphabet.
      */
     int size() {
-        return this._chars.length();
+        return _codePoints.length;
     }
 
     /**
      * Returns true if preprocess(CH) is in this alphabet.
      */
     boolean contains(char ch) {
-        for (int i = 0; i < _chars.length(); i = i + 1) {
-            if (toChar(i) == ch) {
-                return true;
-            }
-        }
-        return false;
+        return toIndex(ch) >= 0;
+    }
+
+    /**
+     * Returns true if the code point CODEPOINT is in this alphabet.
+     */
+    boolean containsCodePoint(int codePoint) {
+        return toIndex(codePoint) >= 0;
     }
 
     /**
@@ -47,7 +56,19 @@ class Alphabet {
      * 0 <= INDEX < size().
      */
     char toChar(int index) {
-        return this._chars.charAt(index);
+        int cp = _codePoints[index];
+        if (Character.isSupplementaryCodePoint(cp)) {
+            throw error("character #%d is not a single char", index);
+        }
+        return (char) cp;
+    }
+
+    /**
+     * Returns the code point of character number INDEX in the alphabet,
+     * where 0 <= INDEX < size().
+     */
+    int toCodePoint(int index) {
+        return _codePoints[index];
     }
 
     /**
@@ -55,13 +76,172 @@ class Alphabet {
      * the alphabet. This is the inverse of toChar().
      */
     int toInt(char ch) {
-        return this._chars.indexOf(ch);
+        return toIndex(ch);
+    }
+
+    /**
+     * Returns the index of CODEPOINT in the alphabet, or -1 if it is not
+     * present. This is the inverse of toCodePoint().
+     */
+    int toIndex(int codePoint) {
+        if (_dense != null) {
+            int k = codePoint - _base;
+            if (k < 0 || k >= _dense.length) {
+                return -1;
+            }
+            return _dense[k];
+        }
+        int slot = (codePoint * _hashMult) >>> _hashShift;
+        if (_hashKeys[slot] == codePoint) {
+            return _hashValues[slot];
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the characters of this alphabet, in index order.
+     */
+    String chars() {
+        return _chars;
+    }
+
+    /**
+     * Build the lookup structure used by toIndex: a dense table when the
+     * code points span a small range, else a collision-free hash table.
+     */
+    private void compile() {
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int cp : _codePoints) {
+            min = Math.min(min, cp);
+            max = Math.max(max, cp);
+        }
+        if (_codePoints.length == 0) {
+            min = max = 0;
+        }
+        long span = (long) max - min + 1;
+        if (span <= DENSE_LIMIT
+                || span <= (long) DENSE_FACTOR * _codePoints.length) {
+            _base = min;
+            _dense = new int[(int) span];
+            Arrays.fill(_dense, -1);
+            for (int i = 0; i < _codePoints.length; i += 1) {
+                int k = _codePoints[i] - min;
+                if (_dense[k] >= 0) {
+                    throw error("duplicate character in alphabet: %s",
+                                new String(Character.toChars(_codePoints[i])));
+                }
+                _dense[k] = i;
+            }
+        } else {
+            compileHash();
+        }
+    }
+
+    /**
+     * Search for a multiplier that places every code point in its own
+     * slot of a power-of-two table, so that a lookup is a single probe.
+     */
+    private void compileHash() {
+        int bits = 32 - Integer.numberOfLeadingZeros(
+                       Math.max(1, 2 * _codePoints.length - 1));
+        Random rand = new Random(_codePoints.length);
+        while (true) {
+            int tableSize = 1 << bits;
+            for (int tries = 0; tries < HASH_TRIES; tries += 1) {
+                int mult = rand.nextInt() | 1;
+                int shift = 32 - bits;
+                int[] keys = new int[tableSize];
+                int[] values = new int[tableSize];
+                Arrays.fill(values, -1);
+                boolean ok = true;
+                for (int i = 0; i < _codePoints.length && ok; i += 1) {
+                    int slot = (_codePoints[i] * mult) >>> shift;
+                    if (values[slot] >= 0) {
+                        if (keys[slot] == _codePoints[i]) {
+                            throw error("duplicate character in alphabet: %s",
+                                new String(Character.toChars(keys[slot])));
+                        }
+                        ok = false;
+                    }
+                    keys[slot] = _codePoints[i];
+                    values[slot] = i;
+                }
+                if (ok) {
+                    for (int slot = 0; slot < tableSize; slot += 1) {
+                        if (values[slot] < 0) {
+                            keys[slot] = EMPTY_KEY;
+                        }
+                    }
+                    _hashKeys = keys;
+                    _hashValues = values;
+                    _hashMult = mult;
+                    _hashShift = shift;
+                    return;
+                }
+            }
+            bits += 1;
+        }
     }
 
+    /**
+     * Largest code-point span always given a dense table.
+     */
+    private static final int DENSE_LIMIT = 1 << 12;
+
+    /**
+     * A span up to this many times the alphabet size also gets a
+     * dense table.
+     */
+    private static final int DENSE_FACTOR = 8;
+
+    /**
+     * Multipliers tried at one table size before doubling it.
+     */
+    private static final int HASH_TRIES = 64;
+
+    /**
+     * Marks an unused hash slot; not a valid code point.
+     */
+    private static final int EMPTY_KEY = -1;
 
     /**
      * Define the chars of my alphabet.
      */
     private String _chars;
 
+    /**
+     * The code points of my alphabet, in index order.
+     */
+    private int[] _codePoints;
+
+    /**
+     * Index of each code point minus _base, or -1; null when hashing.
+     */
+    private int[] _dense;
+
+    /**
+     * Code point stored at _dense[0].
+     */
+    private int _base;
+
+    /**
+     * Code point held in each hash slot, or EMPTY_KEY.
+     */
+    private int[] _hashKeys;
+
+    /**
+     * Index of the code point held in each hash slot.
+     */
+    private int[] _hashValues;
+
+    /**
+     * Odd multiplier of the hash function.
+     */
+    private int _hashMult;
+
+    /**
+     * Right shift of the hash function.
+     */
+    private int _hashShift;
+
 }
@@ -0,0 +1,78 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A Writer of ASCII text to a channel, through a direct buffer.
+ *
+ * @author Yuanshan Chen
+ */
+class ChannelWriter extends Writer {
+
+    /**
+     * A Writer to CHANNEL.
+     */
+    ChannelWriter(WritableByteChannel channel) {
+        _channel = channel;
+    }
+
+    @Override
+    public void write(char[] buf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i += 1) {
+            if (!_buffer.hasRemaining()) {
+                drain();
+            }
+            char c = buf[i];
+            if (c > MAX_ASCII) {
+                throw new IOException("non-ASCII output character");
+            }
+            _buffer.put((byte) c);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        drain();
+        _channel.close();
+    }
+
+    /**
+     * Write all of my buffer to my channel.
+     */
+    private void drain() throws IOException {
+        _buffer.flip();
+        while (_buffer.hasRemaining()) {
+            _channel.write(_buffer);
+        }
+        _buffer.clear();
+    }
+
+    /**
+     * Largest ASCII character.
+     */
+    private static final char MAX_ASCII = 0x7f;
+
+    /**
+     * Size of my buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Destination of my output.
+     */
+    private final WritableByteChannel _channel;
+
+    /**
+     * Output not yet written to _channel.
+     */
+    private final ByteBuffer _buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+}
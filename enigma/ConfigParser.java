@@ -0,0 +1,370 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A parser of configuration files, which reads the file in one pass a
+ * character at a time.  It checks the form of each rotor's cycles, but
+ * only builds a rotor, filling in its permutation directly from its
+ * cycles, when the rotor is first used (see RotorCatalog).  A
+ * configuration is an alphabet, the number of rotor slots, the number
+ * of pawls, and any number of rotors, all separated by blanks.  A rotor
+ * is a name, a type (M followed by its notches for a moving rotor, N for
+ * a fixed rotor, and anything else for a reflector), and any number of
+ * cycles, which may be written with or without blanks between them.
+ * Errors give the line and column at which they were found; those in
+ * the characters of a rotor's cycles or notches are found only when the
+ * rotor is built.
+ *
+ * @author Yuanshan Chen
+ */
+class ConfigParser {
+
+    /**
+     * A parser of TEXT, which came from SOURCE.
+     */
+    ConfigParser(String text, String source) {
+        _text = text;
+        _source = source;
+    }
+
+    /**
+     * Return the definition in the file FILE, called NAME in messages.
+     */
+    static MachineDefinition parse(Path file, String name) {
+        String text;
+        try {
+            text = new String(Files.readAllBytes(file),
+                              Charset.defaultCharset());
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+        return new ConfigParser(text, name).parse();
+    }
+
+    /**
+     * Return the definition in my text.
+     */
+    MachineDefinition parse() {
+        String alpha = token("an alphabet");
+        try {
+            _alphabet = WiringPool.alphabet(alpha);
+        } catch (EnigmaException excp) {
+            throw error("%s: %s", where(), excp.getMessage());
+        }
+        int numRotors = number("the number of rotor slots");
+        int pawls = number("the number of pawls");
+        ArrayList<RotorText> rotors = new ArrayList<RotorText>();
+        while (skipBlanks()) {
+            rotors.add(rotorText());
+        }
+        String[] names = new String[rotors.size()];
+        byte[] kinds = new byte[rotors.size()];
+        for (int k = 0; k < names.length; k += 1) {
+            names[k] = rotors.get(k).name;
+            kinds[k] = (byte) rotors.get(k).kind();
+        }
+        return new MachineDefinition(
+            _alphabet, numRotors, pawls,
+            new RotorCatalog(names, kinds, k -> rotor(rotors.get(k))));
+    }
+
+    /**
+     * Return the description of the rotor that starts at my position,
+     * and move past it.
+     */
+    private RotorText rotorText() {
+        if (_text.charAt(_pos) == '(') {
+            throw error("%s: expected a rotor name, found a cycle",
+                        here());
+        }
+        RotorText result = new RotorText();
+        result.name = token("a rotor name");
+        result.line = _tokenLine;
+        result.column = _tokenColumn;
+        result.type = token("the type of rotor " + result.name);
+        if (result.type.charAt(0) == '(') {
+            throw error("%s: expected the type of rotor %s, found a cycle",
+                        where(), result.name);
+        }
+        result.cycles = _pos;
+        result.cyclesLine = _line;
+        result.cyclesColumn = _column;
+        while (skipBlanks() && _text.charAt(_pos) == '(') {
+            cycle(null);
+        }
+        return result;
+    }
+
+    /**
+     * Return the rotor described by TEXT.
+     */
+    private Rotor rotor(RotorText text) {
+        EnigmaEvents.RotorRead event = new EnigmaEvents.RotorRead();
+        event.begin();
+        ConfigParser parser = new ConfigParser(_text, _source);
+        parser._alphabet = _alphabet;
+        parser._pos = text.cycles;
+        parser._line = text.cyclesLine;
+        parser._column = text.cyclesColumn;
+        Rotor result = parser.rotor(text.name, text.type, text.line,
+                                    text.column);
+        if (event.shouldCommit()) {
+            event.rotor = text.name;
+            event.kind = result.reflecting() ? "reflector"
+                : result.rotates() ? "moving" : "fixed";
+            event.alphabetSize = _alphabet.size();
+            event.commit();
+        }
+        return result;
+    }
+
+    /**
+     * Return the rotor named NAME, of type TYPE, whose cycles start at
+     * my position.  Its name is at LINE and COLUMN.
+     */
+    private Rotor rotor(String name, String type, int line, int column) {
+        _forward = new int[_alphabet.size()];
+        _members = new int[_alphabet.size()];
+        Arrays.fill(_forward, -1);
+        while (skipBlanks() && _text.charAt(_pos) == '(') {
+            cycle(name);
+        }
+        for (int k = 0; k < _forward.length; k += 1) {
+            if (_forward[k] < 0) {
+                _forward[k] = k;
+            }
+        }
+        try {
+            Permutation perm = WiringPool.permutation(_forward, _alphabet);
+            if (type.charAt(0) == 'M') {
+                return new MovingRotor(name, perm, type.substring(1));
+            } else if (type.charAt(0) == 'N') {
+                return new FixedRotor(name, perm);
+            } else {
+                return new Reflector(name, perm);
+            }
+        } catch (EnigmaException excp) {
+            throw error("%s: rotor %s: %s", position(line, column), name,
+                        excp.getMessage());
+        }
+    }
+
+    /**
+     * Read the cycle that starts at my position, which is an open
+     * parenthesis.  If NAME is null, just check its form; otherwise add
+     * it to _forward as a cycle of the rotor named NAME.
+     */
+    private void cycle(String name) {
+        int line = _line, column = _column;
+        advance();
+        int n = 0;
+        while (true) {
+            if (_pos == _text.length()) {
+                throw error("%s: unterminated cycle",
+                            position(line, column));
+            }
+            int c = _text.codePointAt(_pos);
+            if (c == ')') {
+                break;
+            }
+            if (c == '(' || Character.isWhitespace(c)) {
+                throw error("%s: unterminated cycle",
+                            position(line, column));
+            }
+            n += 1;
+            if (name == null) {
+                advance();
+                continue;
+            }
+            int index = _alphabet.toIndex(c);
+            if (index < 0) {
+                throw error("%s: character '%s' of rotor %s not in alphabet",
+                            here(), new String(Character.toChars(c)), name);
+            }
+            if (_forward[index] != -1) {
+                throw error("%s: character '%s' appears twice in rotor %s",
+                            here(), new String(Character.toChars(c)), name);
+            }
+            _forward[index] = index;
+            _members[n - 1] = index;
+            for (int k = 0; k < Character.charCount(c); k += 1) {
+                advance();
+            }
+        }
+        if (n == 0) {
+            throw error("%s: empty cycle", position(line, column));
+        }
+        advance();
+        if (_pos < _text.length() && _text.charAt(_pos) != '('
+            && !Character.isWhitespace(_text.charAt(_pos))) {
+            throw error("%s: expected a blank after cycle", here());
+        }
+        for (int k = 0; name != null && k < n; k += 1) {
+            _forward[_members[k]] = _members[(k + 1) % n];
+        }
+    }
+
+    /**
+     * Return the number that is the next token, described by WHAT.
+     */
+    private int number(String what) {
+        String token = token(what);
+        try {
+            return Integer.parseInt(token);
+        } catch (NumberFormatException excp) {
+            throw error("%s: expected %s, found '%s'", where(), what, token);
+        }
+    }
+
+    /**
+     * Return the next token, described by WHAT, and set where() to its
+     * position.
+     */
+    private String token(String what) {
+        if (!skipBlanks()) {
+            throw error("%s: configuration file truncated: expected %s",
+                        here(), what);
+        }
+        _tokenLine = _line;
+        _tokenColumn = _column;
+        int start = _pos;
+        while (_pos < _text.length()
+               && !Character.isWhitespace(_text.charAt(_pos))) {
+            advance();
+        }
+        return _text.substring(start, _pos);
+    }
+
+    /**
+     * Skip blanks and line terminators.  Return true iff any text
+     * remains.
+     */
+    private boolean skipBlanks() {
+        while (_pos < _text.length()
+               && Character.isWhitespace(_text.charAt(_pos))) {
+            advance();
+        }
+        return _pos < _text.length();
+    }
+
+    /**
+     * Move past the character at my position.
+     */
+    private void advance() {
+        char c = _text.charAt(_pos);
+        _pos += 1;
+        if (c == '\n') {
+            _line += 1;
+            _column = 1;
+        } else if (!Character.isLowSurrogate(c)) {
+            _column += 1;
+        }
+    }
+
+    /**
+     * Return the position of the last token read, for messages.
+     */
+    private String where() {
+        return position(_tokenLine, _tokenColumn);
+    }
+
+    /**
+     * Return my position, for messages.
+     */
+    private String here() {
+        return position(_line, _column);
+    }
+
+    /**
+     * Return the position at LINE and COLUMN of my source, for messages.
+     */
+    private String position(int line, int column) {
+        return String.format("%s:%d:%d", _source, line, column);
+    }
+
+    /**
+     * Where a rotor is described in my text.
+     */
+    private static class RotorText {
+
+        /**
+         * Return my rotor's kind, as for RotorCatalog.
+         */
+        int kind() {
+            switch (type.charAt(0)) {
+            case 'M':
+                return RotorCatalog.MOVING;
+            case 'N':
+                return RotorCatalog.FIXED;
+            default:
+                return RotorCatalog.REFLECTOR;
+            }
+        }
+
+        /**
+         * The rotor's name and type.
+         */
+        private String name, type;
+
+        /**
+         * Line and column of the rotor's name.
+         */
+        private int line, column;
+
+        /**
+         * Index in the text, line and column of the end of the rotor's
+         * type, where its cycles start.
+         */
+        private int cycles, cyclesLine, cyclesColumn;
+    }
+
+    /**
+     * The text I parse.
+     */
+    private final String _text;
+
+    /**
+     * Name of the source of _text, for messages.
+     */
+    private final String _source;
+
+    /**
+     * Index of the next character of _text.
+     */
+    private int _pos;
+
+    /**
+     * Line and column of the next character of _text, from 1.
+     */
+    private int _line = 1, _column = 1;
+
+    /**
+     * Line and column of the last token read.
+     */
+    private int _tokenLine, _tokenColumn;
+
+    /**
+     * The alphabet of the configuration.
+     */
+    private Alphabet _alphabet;
+
+    /**
+     * The permutation of the rotor being built, with -1 for characters in
+     * no cycle so far.
+     */
+    private int[] _forward;
+
+    /**
+     * The members of the cycle being built.
+     */
+    private int[] _members;
+
+}
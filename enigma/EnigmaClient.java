@@ -0,0 +1,151 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Runs Main in an EnigmaDaemon rather than in this JVM.  Takes the
+ * socket of the daemon followed by exactly the arguments of Main, and
+ * behaves as Main would: it passes on the standard input, prints what
+ * Main prints, and exits with Main's status.  This client is itself a
+ * JVM program, so each run still pays for a JVM startup;
+ * client/enigma-client is a native client speaking the same protocol
+ * that does not.
+ *
+ * @author Yuanshan Chen
+ */
+class EnigmaClient {
+
+    /**
+     * Run Main with arguments ARGS[1..] in the daemon listening on the
+     * socket named ARGS[0].
+     */
+    public static void main(String... args) {
+        if (args.length < 1) {
+            System.err.println("Error: Usage: EnigmaClient SOCKET ARGS...");
+            System.exit(1);
+        }
+        int status;
+        try {
+            status = run(Paths.get(args[0]),
+                         Arrays.copyOfRange(args, 1, args.length),
+                         System.in, System.out, System.err);
+        } catch (IOException excp) {
+            System.err.printf("Error: could not reach daemon on %s%n",
+                              args[0]);
+            status = 1;
+        }
+        System.out.flush();
+        System.exit(status);
+    }
+
+    /**
+     * Run Main with arguments ARGS in the daemon listening on SOCKET,
+     * with standard input STDIN, standard output STDOUT and standard
+     * error STDERR, and return its exit status.
+     */
+    static int run(Path socket, String[] args, InputStream stdin,
+                   OutputStream stdout, OutputStream stderr)
+        throws IOException {
+        try (SocketChannel channel =
+                 SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            DataOutputStream request =
+                new DataOutputStream(Channels.newOutputStream(channel));
+            EnigmaDaemon.writeRequest(request,
+                                      Paths.get("").toAbsolutePath(), args);
+            Thread input = new Thread(() -> copyInput(stdin, channel));
+            input.setDaemon(true);
+            input.start();
+            DataInputStream reply = new DataInputStream(
+                new BufferedInputStream(new ChannelInputStream(channel)));
+            byte[] buf = new byte[BUFFER_SIZE];
+            while (true) {
+                byte kind = reply.readByte();
+                if (kind == EnigmaDaemon.EXIT) {
+                    return reply.readInt();
+                }
+                OutputStream out =
+                    kind == EnigmaDaemon.STDERR ? stderr : stdout;
+                for (int n = reply.readInt(); n > 0; ) {
+                    int k = reply.read(buf, 0, Math.min(n, buf.length));
+                    if (k < 0) {
+                        throw new IOException("daemon closed connection");
+                    }
+                    out.write(buf, 0, k);
+                    n -= k;
+                }
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Copy IN to CHANNEL, then shut down its output.  Gives up quietly
+     * if the daemon has stopped reading.
+     */
+    private static void copyInput(InputStream in, SocketChannel channel) {
+        byte[] buf = new byte[BUFFER_SIZE];
+        try {
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                ByteBuffer bytes = ByteBuffer.wrap(buf, 0, n);
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+            channel.shutdownOutput();
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /**
+     * An input stream reading a channel directly.  Unlike the streams of
+     * Channels, it does not hold the channel's blocking lock while
+     * reading, so another thread may write to the channel meanwhile.
+     */
+    private static class ChannelInputStream extends InputStream {
+
+        /**
+         * A stream reading CHANNEL.
+         */
+        ChannelInputStream(SocketChannel channel) {
+            _channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            return _channel.read(ByteBuffer.wrap(buf, off, len));
+        }
+
+        /**
+         * The channel I read.
+         */
+        private final SocketChannel _channel;
+    }
+
+    /**
+     * Bytes copied at a time.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+}
@@ -0,0 +1,341 @@
+package enigma;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A resident process that runs Main on behalf of a client, so that,
+ * once a configuration file has been read, a run costs neither parsing
+ * that file nor Main's class loading and warm-up.  With the native
+ * client, client/enigma-client, a run costs no JVM startup either;
+ * EnigmaClient does the same in Java.  Parsed configurations are kept
+ * until their files change.
+ *
+ * A client connects to a Unix-domain socket and sends its working
+ * directory and arguments (see writeRequest), then its standard input.
+ * The daemon replies with frames, each a kind byte and a length, of
+ * standard output and standard error, ending with an EXIT frame giving
+ * the exit status.
+ *
+ * @author Yuanshan Chen
+ */
+class EnigmaDaemon {
+
+    /**
+     * Serve runs of Main on the socket named ARGS[0] until killed.
+     */
+    public static void main(String... args) {
+        try {
+            if (args.length != 1) {
+                throw error("Usage: EnigmaDaemon SOCKET");
+            }
+            new EnigmaDaemon(Paths.get(args[0])).serve();
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * A daemon listening on the socket file SOCKET, which is replaced
+     * if it exists but no daemon answers on it.
+     */
+    EnigmaDaemon(Path socket) {
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(socket);
+        try {
+            if (Files.exists(socket)) {
+                if (answers(address)) {
+                    throw error("a daemon is already running on %s", socket);
+                }
+                Files.delete(socket);
+            }
+            _listener = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            _listener.bind(address);
+        } catch (IOException excp) {
+            throw error("could not listen on %s", socket);
+        }
+        socket.toFile().deleteOnExit();
+    }
+
+    /**
+     * Return true iff a daemon accepts connections at ADDRESS.
+     */
+    private static boolean answers(UnixDomainSocketAddress address) {
+        try {
+            SocketChannel.open(address).close();
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * Accept and run clients' requests until my socket is closed.
+     */
+    void serve() {
+        ExecutorService pool = Executors.newCachedThreadPool();
+        try {
+            while (true) {
+                SocketChannel client = _listener.accept();
+                pool.execute(() -> run(client));
+            }
+        } catch (IOException excp) {
+            if (_listener.isOpen()) {
+                throw error("could not accept connection");
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Stop accepting requests.
+     */
+    void stop() {
+        try {
+            _listener.close();
+        } catch (IOException excp) {
+            throw error("could not close socket");
+        }
+    }
+
+    /**
+     * Run the request from CLIENT and send it the results.
+     */
+    private void run(SocketChannel client) {
+        try (client) {
+            DataInputStream in =
+                new DataInputStream(Channels.newInputStream(client));
+            OutputStream sink = Channels.newOutputStream(client);
+            Path directory = Paths.get(in.readUTF());
+            String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i += 1) {
+                args[i] = in.readUTF();
+            }
+            PrintStream out = new PrintStream(
+                new FrameOutputStream(sink, STDOUT, FRAME_SIZE));
+            PrintStream err = new PrintStream(
+                new FrameOutputStream(sink, STDERR, FRAME_SIZE));
+            int status = run(args, directory, new FilterInputStream(in) {
+                @Override
+                public void close() {
+                }
+            }, out, err);
+            out.flush();
+            err.flush();
+            DataOutputStream exit = new DataOutputStream(sink);
+            exit.writeByte(EXIT);
+            exit.writeInt(status);
+            exit.flush();
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /**
+     * Run Main with arguments ARGS, naming files relative to DIRECTORY,
+     * with standard input STDIN, standard output STDOUT, and standard
+     * error STDERR.  Return the exit status Main would have had.
+     */
+    int run(String[] args, Path directory, InputStream stdin,
+            PrintStream stdout, PrintStream stderr) {
+        Main main = null;
+        try {
+            main = new Main(args, directory, stdin, stdout);
+            main.setDefinition(definition(main, configName(args),
+                                          directory));
+            main.process();
+            main.close();
+            return 0;
+        } catch (EnigmaException excp) {
+            stdout.flush();
+            stderr.printf("Error: %s%n", excp.getMessage());
+        } catch (RuntimeException excp) {
+            stdout.flush();
+            stderr.print("Exception in thread \"main\" ");
+            excp.printStackTrace(stderr);
+        }
+        if (main != null) {
+            try {
+                main.close();
+            } catch (EnigmaException excp) {
+                stderr.printf("Error: %s%n", excp.getMessage());
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Return the definition in the configuration file named NAME,
+     * relative to DIRECTORY, reading it with MAIN if it has changed
+     * since I last read it.
+     */
+    private MachineDefinition definition(Main main, String name,
+                                         Path directory) {
+        Path path = directory.resolve(name);
+        String key;
+        try {
+            BasicFileAttributes attrs =
+                Files.readAttributes(path, BasicFileAttributes.class);
+            key = String.format("%s %s %d", path.toRealPath(),
+                                attrs.lastModifiedTime(), attrs.size());
+        } catch (IOException excp) {
+            return main.definition();
+        }
+        MachineDefinition result = _definitions.get(key);
+        if (result == null) {
+            result = main.definition();
+            _definitions.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Return the name of the configuration file in Main arguments ARGS,
+     * which Main has already checked.
+     */
+    private static String configName(String[] args) {
+        int first = 0;
+        while (args[first].startsWith("--")) {
+            first += 1;
+        }
+        return args[first];
+    }
+
+    /**
+     * Send a request to run Main with arguments ARGS in DIRECTORY on
+     * OUT, which is followed by the standard input.
+     */
+    static void writeRequest(DataOutputStream out, Path directory,
+                             String[] args) throws IOException {
+        out.writeUTF(directory.toString());
+        out.writeInt(args.length);
+        for (String arg : args) {
+            out.writeUTF(arg);
+        }
+        out.flush();
+    }
+
+    /**
+     * An output stream that sends what is written to it as frames of
+     * one kind on another stream.  Frames sent on the same stream are
+     * written whole, one at a time.
+     */
+    private static class FrameOutputStream extends OutputStream {
+
+        /**
+         * A stream sending frames of kind KIND, holding at most SIZE
+         * bytes, to OUT.
+         */
+        FrameOutputStream(OutputStream out, byte kind, int size) {
+            _lock = out;
+            _out = new DataOutputStream(out);
+            _kind = kind;
+            _buffer = new byte[size];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (_length == _buffer.length) {
+                flush();
+            }
+            _buffer[_length] = (byte) b;
+            _length += 1;
+        }
+
+        @Override
+        public void write(byte[] buf, int off, int len) throws IOException {
+            while (len > 0) {
+                if (_length == _buffer.length) {
+                    flush();
+                }
+                int n = Math.min(len, _buffer.length - _length);
+                System.arraycopy(buf, off, _buffer, _length, n);
+                _length += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (_length == 0) {
+                return;
+            }
+            synchronized (_lock) {
+                _out.writeByte(_kind);
+                _out.writeInt(_length);
+                _out.write(_buffer, 0, _length);
+                _out.flush();
+            }
+            _length = 0;
+        }
+
+        /**
+         * The stream my frames go to, locked while writing each one.
+         */
+        private final Object _lock;
+
+        /**
+         * Destination of my frames.
+         */
+        private final DataOutputStream _out;
+
+        /**
+         * The kind of my frames.
+         */
+        private final byte _kind;
+
+        /**
+         * Contents of the next frame.
+         */
+        private final byte[] _buffer;
+
+        /**
+         * Number of bytes in _buffer.
+         */
+        private int _length;
+    }
+
+    /**
+     * Frame kinds: standard output, standard error, and exit status.
+     */
+    static final byte STDOUT = 1, STDERR = 2, EXIT = 3;
+
+    /**
+     * Largest frame of output sent.
+     */
+    private static final int FRAME_SIZE = 1 << 16;
+
+    /**
+     * The socket I accept requests on.
+     */
+    private final ServerSocketChannel _listener;
+
+    /**
+     * Definitions read, by configuration file path, time and size.
+     */
+    private final ConcurrentHashMap<String, MachineDefinition>
+        _definitions = new ConcurrentHashMap<>();
+
+}
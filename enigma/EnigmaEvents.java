@@ -0,0 +1,135 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events for the work of Main, so that it can be
+ * seen alongside GC and JIT activity.  Each is timed from begin() to
+ * commit().  Fields are filled in only if shouldCommit(), so that an
+ * event costs nothing beyond its (usually eliminated) allocation when
+ * it is not being recorded.  Events name the rotors used but never
+ * record settings, rings, or plugboards, which are keys.
+ *
+ * @author Yuanshan Chen
+ */
+final class EnigmaEvents {
+
+    /**
+     * Not instantiable.
+     */
+    private EnigmaEvents() {
+    }
+
+    /**
+     * The reading of a configuration file.
+     */
+    @Name("enigma.ConfigRead")
+    @Label("Configuration Read")
+    @Category("Enigma")
+    @Description("Parsing of a configuration file")
+    static class ConfigRead extends Event {
+        /**
+         * Number of characters in the alphabet.
+         */
+        @Label("Alphabet Size")
+        int alphabetSize;
+
+        /**
+         * Number of rotor slots.
+         */
+        @Label("Slots")
+        int slots;
+
+        /**
+         * Names of all the rotors described, separated by blanks.
+         */
+        @Label("Rotors")
+        String rotors;
+    }
+
+    /**
+     * The reading of one rotor's description in a configuration file.
+     */
+    @Name("enigma.RotorRead")
+    @Label("Rotor Read")
+    @Category("Enigma")
+    @Description("Parsing of one rotor of a configuration file")
+    static class RotorRead extends Event {
+        /**
+         * Name of the rotor.
+         */
+        @Label("Rotor")
+        String rotor;
+
+        /**
+         * "moving", "fixed", or "reflector".
+         */
+        @Label("Kind")
+        String kind;
+
+        /**
+         * Number of characters in the alphabet.
+         */
+        @Label("Alphabet Size")
+        int alphabetSize;
+    }
+
+    /**
+     * The application of a setting line.
+     */
+    @Name("enigma.SettingApplied")
+    @Label("Setting Applied")
+    @Category("Enigma")
+    @Description("Checking and applying one setting line")
+    static class SettingApplied extends Event {
+        /**
+         * Names of the rotors inserted, separated by blanks.
+         */
+        @Label("Rotors")
+        String rotors;
+
+        /**
+         * Number of characters in the alphabet.
+         */
+        @Label("Alphabet Size")
+        int alphabetSize;
+
+        /**
+         * True iff the machine was taken from the setting cache.
+         */
+        @Label("Cached")
+        boolean cached;
+    }
+
+    /**
+     * The conversion of a message: the text following one setting line.
+     */
+    @Name("enigma.MessageConverted")
+    @Label("Message Converted")
+    @Category("Enigma")
+    @Description("Conversion of the text following one setting line")
+    static class MessageConverted extends Event {
+        /**
+         * Names of the rotors used, separated by blanks.
+         */
+        @Label("Rotors")
+        String rotors;
+
+        /**
+         * Number of characters in the alphabet.
+         */
+        @Label("Alphabet Size")
+        int alphabetSize;
+
+        /**
+         * Number of characters converted.
+         */
+        @Label("Characters")
+        long characters;
+    }
+
+}
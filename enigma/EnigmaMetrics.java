@@ -0,0 +1,319 @@
+package enigma;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counts of the work done by Main and the time spent in each of its
+ * phases, kept in contention-free counters and published as the MBean
+ * NAME.  Metrics are off unless the system property enigma.metrics is
+ * true, in which case get() returns the one instance and the MBean is
+ * registered.  If enigma.metrics.file names a file, a line of metrics
+ * is also appended to it every enigma.metrics.interval seconds (10 by
+ * default), and at exit.
+ *
+ * @author Yuanshan Chen
+ */
+class EnigmaMetrics implements EnigmaMetricsMBean {
+
+    /**
+     * Phases of Main: reading the configuration, applying setting lines,
+     * converting text, and writing it.
+     */
+    static final int CONFIG = 0, SETTING = 1, CONVERT = 2, OUTPUT = 3;
+
+    /**
+     * Name of my MBean.
+     */
+    static final String NAME = "enigma:type=Metrics";
+
+    /**
+     * Return the metrics, or null if they are off.
+     */
+    static EnigmaMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Metrics starting from 0.
+     */
+    EnigmaMetrics() {
+        reset();
+    }
+
+    /**
+     * Add NANOS nanoseconds to the time of PHASE.
+     */
+    void phase(int phase, long nanos) {
+        _nanos[phase].add(nanos);
+    }
+
+    /**
+     * Note that N characters were converted in NANOS nanoseconds.
+     */
+    void converted(long n, long nanos) {
+        _characters.add(n);
+        _nanos[CONVERT].add(nanos);
+    }
+
+    /**
+     * Note the end of a message of SIZE characters.
+     */
+    void message(long size) {
+        _messages.increment();
+        _sizes.recordValue(size);
+    }
+
+    /**
+     * Note a lookup in a setting cache, which found a machine iff HIT.
+     */
+    void settingCache(boolean hit) {
+        (hit ? _cacheHits : _cacheMisses).increment();
+    }
+
+    @Override
+    public long getCharacters() {
+        return _characters.sum();
+    }
+
+    @Override
+    public long getMessages() {
+        return _messages.sum();
+    }
+
+    @Override
+    public double getCharactersPerSecond() {
+        return getCharacters() / elapsedSeconds();
+    }
+
+    @Override
+    public double getMessagesPerSecond() {
+        return getMessages() / elapsedSeconds();
+    }
+
+    @Override
+    public double getConfigMillis() {
+        return millis(CONFIG);
+    }
+
+    @Override
+    public double getSettingMillis() {
+        return millis(SETTING);
+    }
+
+    @Override
+    public double getConvertMillis() {
+        return millis(CONVERT);
+    }
+
+    @Override
+    public double getOutputMillis() {
+        return millis(OUTPUT);
+    }
+
+    @Override
+    public long getMessageSizeP50() {
+        return _sizes.percentile(0.5);
+    }
+
+    @Override
+    public long getMessageSizeP90() {
+        return _sizes.percentile(0.9);
+    }
+
+    @Override
+    public long getMessageSizeP99() {
+        return _sizes.percentile(0.99);
+    }
+
+    @Override
+    public long getMessageSizeMax() {
+        return _sizes.percentile(1.0);
+    }
+
+    @Override
+    public long getSettingCacheHits() {
+        return _cacheHits.sum();
+    }
+
+    @Override
+    public long getSettingCacheMisses() {
+        return _cacheMisses.sum();
+    }
+
+    @Override
+    public synchronized void reset() {
+        _characters = new LongAdder();
+        _messages = new LongAdder();
+        _cacheHits = new LongAdder();
+        _cacheMisses = new LongAdder();
+        LongAdder[] nanos = new LongAdder[PHASES];
+        for (int k = 0; k < PHASES; k += 1) {
+            nanos[k] = new LongAdder();
+        }
+        _nanos = nanos;
+        _sizes = new LatencyHistogram();
+        _start = System.nanoTime();
+    }
+
+    /**
+     * Return a line describing my current values, for a metrics file.
+     */
+    String summary() {
+        return String.format(Locale.ROOT,
+                             "%tFT%<tT chars=%d msgs=%d chars/s=%.0f "
+                             + "msgs/s=%.1f config_ms=%.3f setting_ms=%.3f "
+                             + "convert_ms=%.3f output_ms=%.3f "
+                             + "size_p50=%d size_p90=%d size_p99=%d "
+                             + "size_max=%d cache_hits=%d "
+                             + "cache_misses=%d",
+                             System.currentTimeMillis(),
+                             getCharacters(), getMessages(),
+                             getCharactersPerSecond(),
+                             getMessagesPerSecond(), getConfigMillis(),
+                             getSettingMillis(), getConvertMillis(),
+                             getOutputMillis(), getMessageSizeP50(),
+                             getMessageSizeP90(), getMessageSizeP99(),
+                             getMessageSizeMax(), getSettingCacheHits(),
+                             getSettingCacheMisses());
+    }
+
+    /**
+     * Return the time of PHASE in milliseconds.
+     */
+    private double millis(int phase) {
+        return _nanos[phase].sum() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Return the seconds since I was last reset.
+     */
+    private double elapsedSeconds() {
+        return Math.max(1, System.nanoTime() - _start) / NANOS_PER_SECOND;
+    }
+
+    /**
+     * Publish me as the MBean named NAME, returning true iff that
+     * succeeds.
+     */
+    boolean register(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(this, new ObjectName(name));
+            return true;
+        } catch (JMException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * Append summary() to the file named NAME every SECONDS seconds, on
+     * a daemon thread, until the returned executor is shut down.
+     */
+    ScheduledExecutorService dumpEvery(String name, long seconds) {
+        ScheduledExecutorService dumper =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "enigma-metrics");
+                t.setDaemon(true);
+                return t;
+            });
+        dumper.scheduleAtFixedRate(() -> dump(name), seconds, seconds,
+                                   TimeUnit.SECONDS);
+        return dumper;
+    }
+
+    /**
+     * Append summary() to the file named NAME.
+     */
+    void dump(String name) {
+        try (PrintWriter out = new PrintWriter(new FileWriter(name, true))) {
+            out.println(summary());
+        } catch (IOException excp) {
+            System.err.printf("Warning: could not write metrics to %s%n",
+                              name);
+        }
+    }
+
+    /**
+     * Return new metrics, published and dumped as the system
+     * properties direct, or null if metrics are off.
+     */
+    private static EnigmaMetrics start() {
+        if (!Boolean.getBoolean("enigma.metrics")) {
+            return null;
+        }
+        EnigmaMetrics metrics = new EnigmaMetrics();
+        if (!metrics.register(NAME)) {
+            System.err.printf("Warning: could not register %s%n", NAME);
+        }
+        String file = System.getProperty("enigma.metrics.file");
+        if (file != null) {
+            metrics.dumpEvery(file, Long.getLong("enigma.metrics.interval",
+                                                 DEFAULT_INTERVAL));
+            Runtime.getRuntime().addShutdownHook(
+                new Thread(() -> metrics.dump(file)));
+        }
+        return metrics;
+    }
+
+    /**
+     * Number of phases.
+     */
+    private static final int PHASES = 4;
+
+    /**
+     * Default seconds between dumps.
+     */
+    private static final long DEFAULT_INTERVAL = 10;
+
+    /**
+     * Nanoseconds in a millisecond and in a second.
+     */
+    private static final double NANOS_PER_MILLI = 1e6,
+        NANOS_PER_SECOND = 1e9;
+
+    /**
+     * The metrics, or null if they are off.
+     */
+    private static final EnigmaMetrics INSTANCE = start();
+
+    /**
+     * Characters converted.
+     */
+    private volatile LongAdder _characters;
+
+    /**
+     * Messages converted.
+     */
+    private volatile LongAdder _messages;
+
+    /**
+     * Setting lines found, and not found, in a setting cache.
+     */
+    private volatile LongAdder _cacheHits, _cacheMisses;
+
+    /**
+     * Time of each phase, in nanoseconds.
+     */
+    private volatile LongAdder[] _nanos;
+
+    /**
+     * Sizes of messages.
+     */
+    private volatile LatencyHistogram _sizes;
+
+    /**
+     * Value of System.nanoTime() when I was last reset.
+     */
+    private volatile long _start;
+
+}
@@ -0,0 +1,88 @@
+package enigma;
+
+/**
+ * The management interface of EnigmaMetrics.  Times are cumulative, in
+ * milliseconds; rates are averages since the metrics were last reset.
+ * A message is the text that follows one setting line; message sizes
+ * are accurate to within an eighth, as kept by LatencyHistogram.
+ *
+ * @author Yuanshan Chen
+ */
+public interface EnigmaMetricsMBean {
+
+    /**
+     * Return the number of characters converted.
+     */
+    long getCharacters();
+
+    /**
+     * Return the number of messages converted.
+     */
+    long getMessages();
+
+    /**
+     * Return the average number of characters converted per second.
+     */
+    double getCharactersPerSecond();
+
+    /**
+     * Return the average number of messages converted per second.
+     */
+    double getMessagesPerSecond();
+
+    /**
+     * Return the time spent reading configurations.
+     */
+    double getConfigMillis();
+
+    /**
+     * Return the time spent reading and applying setting lines.
+     */
+    double getSettingMillis();
+
+    /**
+     * Return the time spent converting message text.
+     */
+    double getConvertMillis();
+
+    /**
+     * Return the time spent writing converted text.
+     */
+    double getOutputMillis();
+
+    /**
+     * Return the median message size, in characters.
+     */
+    long getMessageSizeP50();
+
+    /**
+     * Return the 90th percentile of message size, in characters.
+     */
+    long getMessageSizeP90();
+
+    /**
+     * Return the 99th percentile of message size, in characters.
+     */
+    long getMessageSizeP99();
+
+    /**
+     * Return the largest message size, in characters.
+     */
+    long getMessageSizeMax();
+
+    /**
+     * Return the number of setting lines found in the setting cache.
+     */
+    long getSettingCacheHits();
+
+    /**
+     * Return the number of setting lines not found in the setting cache.
+     */
+    long getSettingCacheMisses();
+
+    /**
+     * Set all counts and times to 0.
+     */
+    void reset();
+
+}
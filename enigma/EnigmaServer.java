@@ -0,0 +1,355 @@
+package enigma;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A local HTTP service that converts messages with a configuration
+ * read once at startup, so that callers need not start a JVM per
+ * message.  Endpoints:
+ *
+ * POST /encrypt: the body is one setting line followed by message
+ * lines; the response is the converted message, as Main prints it.
+ *
+ * POST /batch: the body is any number of setting lines, each followed
+ * by its message lines, exactly as Main's input; the response is Main's
+ * output.
+ *
+ * GET /stats: request counts and latency percentiles per endpoint.
+ *
+ * A request with an error gets status 400 and the message of the error.
+ *
+ * @author Yuanshan Chen
+ */
+class EnigmaServer {
+
+    /**
+     * Serve conversions with the configuration in ARGS[0] on the
+     * loopback port ARGS[1] (DEFAULT_PORT if absent) until killed.
+     */
+    public static void main(String... args) {
+        try {
+            if (args.length < 1 || args.length > 2) {
+                throw error("Usage: EnigmaServer CONFIG [PORT]");
+            }
+            int port = DEFAULT_PORT;
+            if (args.length > 1) {
+                try {
+                    port = Integer.parseInt(args[1]);
+                } catch (NumberFormatException excp) {
+                    throw error("bad port: %s", args[1]);
+                }
+            }
+            EnigmaServer server = new EnigmaServer(args[0], port);
+            System.err.printf("Serving on port %d%n", server.port());
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * A server, already running, of conversions with the configuration
+     * file named CONFIGNAME on loopback port PORT (any free port if 0).
+     */
+    EnigmaServer(String configName, int port) {
+        _configName = configName;
+        _definition = new Main(new String[] { configName }).definition();
+        _alphabet = _definition.alphabet();
+        try {
+            _server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                BACKLOG);
+        } catch (IOException excp) {
+            throw error("could not listen on port %d", port);
+        }
+        _server.createContext("/encrypt",
+                              ex -> serve(ex, _encrypt, false));
+        _server.createContext("/batch", ex -> serve(ex, _batch, true));
+        _server.createContext("/stats", this::stats);
+        _executor = newExecutor();
+        _server.setExecutor(_executor);
+        _server.start();
+    }
+
+    /**
+     * Return the port I listen on.
+     */
+    int port() {
+        return _server.getAddress().getPort();
+    }
+
+    /**
+     * Stop serving, waiting at most DELAY seconds for requests in
+     * progress.
+     */
+    void stop(int delay) {
+        _server.stop(delay);
+        _executor.shutdown();
+    }
+
+    /**
+     * Return the result of converting the messages in INPUT, Main's
+     * input format, as Main would print it.  Unless MANY, INPUT must
+     * have exactly one setting line.
+     */
+    String convert(Reader input, boolean many) {
+        int[] settings = new int[1];
+        StringWriter out = new StringWriter();
+        MessageStream stream = new MessageStream(_alphabet, line -> {
+            settings[0] += 1;
+            if (!many && settings[0] > 1) {
+                throw error("only one setting line allowed");
+            }
+            return machineFor(line);
+        }, out);
+        char[] buf = new char[MessageStream.BUFFER_SIZE];
+        try {
+            int n;
+            while ((n = input.read(buf)) >= 0) {
+                stream.accept(buf, 0, n);
+            }
+        } catch (IOException excp) {
+            throw error("could not read request");
+        }
+        stream.finish();
+        return out.toString();
+    }
+
+    /**
+     * Return a machine of my own set according to setting LINE: a copy
+     * from my setting cache if it has one, and otherwise one set up by
+     * a Main of its own that shares my definition, since Main's checks
+     * are not reentrant.  Requests on different threads thus never wait
+     * for each other's setting lines.
+     */
+    private Machine machineFor(String line) {
+        Machine result = _settings.get(line);
+        if (result == null) {
+            Main main = new Main(new String[] { _configName });
+            main.setDefinition(_definition);
+            result = main.configure(line);
+            _settings.put(line, result);
+        }
+        return result;
+    }
+
+    /**
+     * Answer the conversion request EXCHANGE, recording its latency in
+     * LATENCY.  MANY is as for convert.
+     */
+    private void serve(HttpExchange exchange, LatencyHistogram latency,
+                       boolean many) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                respond(exchange, METHOD_NOT_ALLOWED, "Error: use POST\n");
+                return;
+            }
+            String result;
+            try (Reader in = new InputStreamReader(
+                     new LimitedInputStream(exchange.getRequestBody()),
+                     StandardCharsets.UTF_8)) {
+                result = convert(in, many);
+            } catch (EnigmaException excp) {
+                respond(exchange, BAD_REQUEST,
+                        String.format("Error: %s%n", excp.getMessage()));
+                return;
+            }
+            respond(exchange, OK, result);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Answer the statistics request EXCHANGE.
+     */
+    private void stats(HttpExchange exchange) throws IOException {
+        StringBuilder result = new StringBuilder();
+        result.append("endpoint count p50_us p90_us p99_us p999_us max_us\n");
+        appendStats(result, "/encrypt", _encrypt);
+        appendStats(result, "/batch", _batch);
+        respond(exchange, OK, result.toString());
+    }
+
+    /**
+     * Append a line of statistics for the endpoint NAME, whose latencies
+     * are in LATENCY, to RESULT.
+     */
+    private static void appendStats(StringBuilder result, String name,
+                                    LatencyHistogram latency) {
+        result.append(String.format("%s %d %d %d %d %d %d%n", name,
+                                    latency.count(),
+                                    latency.percentile(0.5),
+                                    latency.percentile(0.9),
+                                    latency.percentile(0.99),
+                                    latency.percentile(0.999),
+                                    latency.percentile(1.0)));
+    }
+
+    /**
+     * Send BODY as the response to EXCHANGE with status STATUS.
+     */
+    private static void respond(HttpExchange exchange, int status,
+                                String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type",
+                                          "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Return an executor that runs each request on a thread of its own:
+     * a virtual thread where the JDK has them, and otherwise a pooled
+     * platform thread.
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * A stream that reads another, and reports an error once more than
+     * MAX_BODY bytes have been read from it.
+     */
+    private static class LimitedInputStream extends InputStream {
+
+        /**
+         * A stream limiting IN.
+         */
+        LimitedInputStream(InputStream in) {
+            _in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = _in.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = _in.read(buf, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _in.close();
+        }
+
+        /**
+         * Note that N more bytes have been read.
+         */
+        private void count(int n) {
+            _read += n;
+            if (_read > MAX_BODY) {
+                throw error("request longer than %d bytes", MAX_BODY);
+            }
+        }
+
+        /**
+         * The stream I read.
+         */
+        private final InputStream _in;
+
+        /**
+         * Number of bytes read so far.
+         */
+        private long _read;
+    }
+
+    /**
+     * Port used when none is given.
+     */
+    static final int DEFAULT_PORT = 8061;
+
+    /**
+     * Longest request body accepted, in bytes.
+     */
+    static final int MAX_BODY = 1 << 24;
+
+    /**
+     * Queue length for pending connections.
+     */
+    private static final int BACKLOG = 128;
+
+    /**
+     * HTTP statuses.
+     */
+    private static final int OK = 200, BAD_REQUEST = 400,
+        METHOD_NOT_ALLOWED = 405;
+
+    /**
+     * Name of my configuration file.
+     */
+    private final String _configName;
+
+    /**
+     * Definition of my machines, read once from my configuration.
+     */
+    private final MachineDefinition _definition;
+
+    /**
+     * Machines already set up from setting lines, shared by all
+     * requests.  Its capacity is the system property
+     * enigma.settingCache, if set.
+     */
+    private final SettingCache _settings = new SettingCache(
+        Integer.getInteger("enigma.settingCache",
+                           SettingCache.DEFAULT_CAPACITY));
+
+    /**
+     * Alphabet of my configuration.
+     */
+    private final Alphabet _alphabet;
+
+    /**
+     * The underlying server.
+     */
+    private final HttpServer _server;
+
+    /**
+     * Runs requests.
+     */
+    private final ExecutorService _executor;
+
+    /**
+     * Latencies of /encrypt requests.
+     */
+    private final LatencyHistogram _encrypt = new LatencyHistogram();
+
+    /**
+     * Latencies of /batch requests.
+     */
+    private final LatencyHistogram _batch = new LatencyHistogram();
+
+}
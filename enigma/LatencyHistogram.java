@@ -0,0 +1,131 @@
+package enigma;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations, or of other non-negative values, that any
+ * number of threads may record into without locking or contending:
+ * each bucket is a LongAdder, as are EnigmaMetrics' counters, so
+ * threads recording into the same bucket update separate cells.
+ * Durations are kept in microseconds.  Values are kept exactly below
+ * 2 * SUB_BUCKETS and otherwise in buckets no wider than 1/SUB_BUCKETS
+ * of their lower bound, so a percentile is within that fraction of the
+ * true value.
+ *
+ * @author Yuanshan Chen
+ */
+class LatencyHistogram {
+
+    /**
+     * An empty histogram.
+     */
+    LatencyHistogram() {
+        _counts = new LongAdder[BUCKETS];
+        for (int k = 0; k < BUCKETS; k += 1) {
+            _counts[k] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record a duration of NANOS nanoseconds.
+     */
+    void record(long nanos) {
+        recordValue(Math.max(0, nanos) / NANOS_PER_MICRO);
+    }
+
+    /**
+     * Record VALUE, which must be non-negative.
+     */
+    void recordValue(long value) {
+        _counts[bucket(value)].increment();
+    }
+
+    /**
+     * Return the number of values recorded.
+     */
+    long count() {
+        long total = 0;
+        for (LongAdder count : _counts) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Return the least value (for durations, in microseconds) that at
+     * least a fraction P of the recorded values do not exceed, where
+     * 0 <= P <= 1, or 0 if none have been recorded.  The result is the
+     * upper bound of the bucket holding that value.
+     */
+    long percentile(double p) {
+        long[] counts = new long[_counts.length];
+        long total = 0;
+        for (int k = 0; k < counts.length; k += 1) {
+            counts[k] = _counts[k].sum();
+            total += counts[k];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p * total));
+        long seen = 0;
+        for (int k = 0; k < counts.length; k += 1) {
+            seen += counts[k];
+            if (seen >= rank) {
+                return upperBound(k);
+            }
+        }
+        return upperBound(counts.length - 1);
+    }
+
+    /**
+     * Return the bucket holding VALUE.
+     */
+    static int bucket(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return 2 * SUB_BUCKETS + (exp - SUB_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Return the largest value in bucket K.
+     */
+    static long upperBound(int k) {
+        if (k < 2 * SUB_BUCKETS) {
+            return k;
+        }
+        int exp = (k - 2 * SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS + 1;
+        long sub = (k - 2 * SUB_BUCKETS) % SUB_BUCKETS;
+        long low = (SUB_BUCKETS + sub) << (exp - SUB_BITS);
+        return low + (1L << (exp - SUB_BITS)) - 1;
+    }
+
+    /**
+     * Log2 of SUB_BUCKETS.
+     */
+    private static final int SUB_BITS = 3;
+
+    /**
+     * Number of buckets per power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * Number of buckets, enough for any non-negative long.
+     */
+    private static final int BUCKETS = bucket(Long.MAX_VALUE) + 1;
+
+    /**
+     * Nanoseconds in a microsecond.
+     */
+    private static final long NANOS_PER_MICRO = 1000;
+
+    /**
+     * Number of values recorded in each bucket.
+     */
+    private final LongAdder[] _counts;
+
+}
@@ -1,7 +1,12 @@
 package enigma;
 
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReference;
 
+import static enigma.EnigmaException.*;
 
 /**
  * Class that represents a complete enigma machine.
@@ -17,10 +22,64 @@ class Machine {
      */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
-        _alphabet = alpha;
-        _numRotors = numRotors;
-        _pawls = pawls;
-        _allRotors = allRotors;
+        this(new MachineDefinition(alpha, numRotors, pawls, allRotors));
+    }
+
+    /**
+     * A new Enigma machine as described by DEFINITION, which I share
+     * with other machines but do not change.  All my other state is my
+     * own: which rotors are in my slots, their settings and rings, and
+     * my plugboard.
+     */
+    Machine(MachineDefinition definition) {
+        _definition = definition;
+        _alphabet = definition.alphabet();
+        _numRotors = definition.numRotors();
+        _pawls = definition.numPawls();
+        setEngine(DEFAULT_ENGINE);
+    }
+
+    /**
+     * Convert with the engine named NAME: "direct", which passes each
+     * character through every rotor in turn, or "composite", which
+     * passes it through the rightmost rotor and then looks up the rest
+     * of its path, through the slower rotors and the reflector, in a
+     * table that is kept until one of those rotors moves, or "table",
+     * which looks up its whole path through the rotors in a StateTable
+     * for my rotors, and converts as "composite" does if that table
+     * would not fit in the StateTable budget, or "tree", which converts
+     * as "composite" does but keeps the path through the slower rotors
+     * as a PermutationTree, so that its cost does not grow with the
+     * number of rotors.
+     */
+    void setEngine(String name) {
+        int engine = Arrays.asList(ENGINES).indexOf(name);
+        if (engine < 0) {
+            throw error("unknown engine %s", name);
+        }
+        _engine = engine;
+        slowMoved();
+    }
+
+    /**
+     * Return the name of my engine.
+     */
+    String engine() {
+        return ENGINES[_engine];
+    }
+
+    /**
+     * Return my definition.
+     */
+    MachineDefinition definition() {
+        return _definition;
+    }
+
+    /**
+     * Return my alphabet.
+     */
+    Alphabet alphabet() {
+        return _alphabet;
     }
 
     /**
@@ -37,22 +96,75 @@ class Machine {
         return this._pawls;
     }
 
+    /**
+     * Return the names of the rotors in my slots, from the reflector on,
+     * separated by blanks.
+     */
+    String rotorNames() {
+        StringBuilder result = new StringBuilder();
+        for (Rotor r : _rotors) {
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append(r.name());
+        }
+        return result.toString();
+    }
+
     /**
      * Set my rotor slots to the rotors named ROTORS from my set of
      * available rotors (ROTORS[0] names the reflector).
-     * Initially, all rotors are set at their 0 setting.
+     * Initially, all rotors are set at their 0 setting, with their
+     * rings at 0.
      */
     void insertRotors(String[] rotors) {
-        int i = 0;
-        _rotors = new Rotor[numRotors()];
-        for (String name : rotors) {
-            for (Rotor x : _allRotors) {
-                if (name.equals(x.name())) {
-                    _rotors[i] = x;
-                    i = i + 1;
-                }
+        Rotor[] slots = new Rotor[numRotors()];
+        for (int i = 0; i < slots.length; i = i + 1) {
+            slots[i] = _definition.rotor(rotors[i]);
+        }
+        _rotors = slots;
+        _settings = new int[numRotors()];
+        _rings = new int[numRotors()];
+        _positions = new int[numRotors()];
+        _notchBits = new long[numRotors()][];
+        _leftRotates = new boolean[numRotors()];
+        _atNotch = new boolean[numRotors() + 1];
+        _slow = new int[_alphabet.size()];
+        _slowStamps = new int[_alphabet.size()];
+        int moving = 0;
+        for (Rotor r : _rotors) {
+            if (r.rotates()) {
+                moving += 1;
+            }
+        }
+        _movingSlots = new int[moving];
+        for (int k = 0, m = 0; k < _rotors.length; k += 1) {
+            if (_rotors[k].rotates()) {
+                _movingSlots[m] = k;
+                m += 1;
             }
+            _leftRotates[k] = k > 0 && _rotors[k - 1].rotates();
+            _rotors[k].compile();
         }
+        reset();
+    }
+
+    /**
+     * Recompute my positions and notches from my settings and rings, and
+     * make the result my origin.
+     */
+    private void reset() {
+        int n = _alphabet.size();
+        for (int k = 1; k < _rotors.length; k += 1) {
+            _positions[k] = Math.floorMod(_settings[k] - _rings[k], n);
+            _notchBits[k] = _rotors[k].notchBits(_rings[k]);
+        }
+        _origin = _positions.clone();
+        _position = 0;
+        _cycle = new AtomicReference<Cycle>();
+        _tableKnown = false;
+        _tree = null;
+        slowMoved();
     }
 
     /**
@@ -60,8 +172,9 @@ class Machine {
      */
     void setrings(String ringstring) {
         for (int i = 1; i < numRotors(); i = i + 1) {
-            _rotors[i].setring(ringstring.charAt(i - 1));
+            _rings[i] = toIndex(ringstring.charAt(i - 1));
         }
+        reset();
     }
 
     /**
@@ -71,8 +184,20 @@ class Machine {
      */
     void setRotors(String setting) {
         for (int i = 1; i < numRotors(); i = i + 1) {
-            _rotors[i].set(setting.charAt(i - 1));
+            _settings[i] = toIndex(setting.charAt(i - 1));
         }
+        reset();
+    }
+
+    /**
+     * Return the index of C in my alphabet.
+     */
+    private int toIndex(char c) {
+        int index = _alphabet.toInt(c);
+        if (index < 0) {
+            throw error("character '%c' not in alphabet", c);
+        }
+        return index;
     }
 
     /**
@@ -88,52 +213,448 @@ class Machine {
      * the machine.
      */
     int convert(int c) {
-        int[] atNRotors = new int[_rotors.length];
-        for (int i = 0; i < _rotors.length; i = i + 1) {
-            if (_rotors[i].atNotch()) {
-                atNRotors[i] = 1;
-            } else {
-                atNRotors[i] = 0;
-            }
-        }
-        _rotors[_numRotors - 1].advance();
-        for (int i = 1; i < _rotors.length - 1; i = i + 1) {
-            if ((atNRotors[i] == 1 && _rotors[i - 1].rotates())
-                    || atNRotors[i + 1] == 1) {
-                _rotors[i].advance();
-            }
+        switch (_engine) {
+        case COMPOSITE:
+            return convertComposite(c);
+        case TABLE:
+            return convertTable(c);
+        case TREE:
+            return convertTree(c);
+        default:
+            break;
         }
+        step();
+        _position += 1;
         int temp = _plugboard.permute(c);
         for (int i = _numRotors - 1; i >= 0; i = i - 1) {
-            temp = _rotors[i].convertForward(temp);
+            temp = _rotors[i].convertForward(temp, _positions[i]);
         }
 
         int tempa = temp;
         for (int x = 1; x < _numRotors; x = x + 1) {
-            tempa = _rotors[x].convertBackward(tempa);
+            tempa = _rotors[x].convertBackward(tempa, _positions[x]);
         }
 
         tempa = _plugboard.permute(tempa);
         return tempa;
     }
 
+    /**
+     * Return convert(C), using the composite engine.  Each keystroke
+     * steps my rotors (see keystroke), and the path of C through all but
+     * the rightmost rotor is looked up in _slow.
+     */
+    private int convertComposite(int c) {
+        int last = _numRotors - 1;
+        keystroke();
+        _position += 1;
+        Rotor fast = _rotors[last];
+        int posn = _positions[last];
+        int temp = fast.convertForward(_plugboard.permute(c), posn);
+        if (_slowStamps[temp] != _slowStamp) {
+            _slow[temp] = throughSlow(temp);
+            _slowStamps[temp] = _slowStamp;
+        }
+        temp = fast.convertBackward(_slow[temp], posn);
+        return _plugboard.permute(temp);
+    }
+
+    /**
+     * Return convert(C), using the table engine: each keystroke steps my
+     * rotors (see keystroke) and then looks up the path of C through
+     * them in _table.
+     */
+    private int convertTable(int c) {
+        if (!_tableKnown) {
+            _table = StateTable.table(_rotors, _positions, _movingSlots);
+            _tableKnown = true;
+        }
+        if (_table == null) {
+            return convertComposite(c);
+        }
+        int last = _numRotors - 1;
+        int n = _alphabet.size();
+        if (keystroke()) {
+            _stateBase = StateTable.stateBase(_positions, _movingSlots, n);
+        }
+        _position += 1;
+        int state = _stateBase + _positions[last];
+        return _plugboard.permute(
+            _table[state * n + _plugboard.permute(c)] & 0xff);
+    }
+
+    /**
+     * Return convert(C), using the tree engine: as for convertComposite,
+     * but with the path through the slower rotors taken from _tree.
+     */
+    private int convertTree(int c) {
+        int last = _numRotors - 1;
+        if (keystroke()) {
+            updateTree();
+        }
+        _position += 1;
+        Rotor fast = _rotors[last];
+        int posn = _positions[last];
+        int temp = fast.convertForward(_plugboard.permute(c), posn);
+        temp = _rotors[0].convertForward(_tree.forward(temp), _positions[0]);
+        temp = fast.convertBackward(_tree.inverse(temp), posn);
+        return _plugboard.permute(temp);
+    }
+
+    /**
+     * Bring _tree up to date with the positions of my rotors other than
+     * the reflector and the rightmost rotor, building it if need be.
+     * Only the leaves of rotors that have moved are changed.
+     */
+    private void updateTree() {
+        int last = _numRotors - 1;
+        if (_tree == null) {
+            _tree = new PermutationTree(last - 1, _alphabet.size());
+            _treePositions = new int[last];
+            for (int k = 1; k < last; k += 1) {
+                _tree.set(k - 1, _rotors[k], _positions[k]);
+                _treePositions[k] = _positions[k];
+            }
+            return;
+        }
+        for (int k : _movingSlots) {
+            if (k > 0 && k < last && _treePositions[k] != _positions[k]) {
+                _tree.set(k - 1, _rotors[k], _positions[k]);
+                _treePositions[k] = _positions[k];
+            }
+        }
+    }
+
+    /**
+     * Advance my rotors for one keystroke, as step() does, except that
+     * while only the rightmost rotor moves (for _quiet keystrokes), only
+     * it is advanced.  Return true iff any other rotor may have moved.
+     */
+    private boolean keystroke() {
+        if (_quiet > 0) {
+            _quiet -= 1;
+            int last = _numRotors - 1;
+            int posn = _positions[last] + 1;
+            _positions[last] = posn == _alphabet.size() ? 0 : posn;
+            return false;
+        }
+        step();
+        _quiet = quietSteps();
+        return true;
+    }
+
+    /**
+     * Return the result of passing C, as it leaves the rightmost rotor,
+     * through the other rotors, the reflector, and the other rotors
+     * back, up to the rightmost rotor.
+     */
+    private int throughSlow(int c) {
+        int last = _numRotors - 1;
+        for (int i = last - 1; i >= 0; i = i - 1) {
+            c = _rotors[i].convertForward(c, _positions[i]);
+        }
+        for (int x = 1; x < last; x = x + 1) {
+            c = _rotors[x].convertBackward(c, _positions[x]);
+        }
+        return c;
+    }
+
+    /**
+     * Note that a rotor other than the rightmost may have moved, so
+     * that no entry of _slow is current and _quiet is unknown.
+     */
+    private void slowMoved() {
+        _quiet = 0;
+        _slowStamp += 1;
+        if (_slowStamp == 0) {
+            Arrays.fill(_slowStamps, 0);
+            _slowStamp = 1;
+        }
+    }
+
+    /**
+     * Advance my rotors for one keystroke.  The rightmost rotor always
+     * moves; any other rotor moves if it is at a notch and its left
+     * neighbor rotates, or if the rotor to its right is at a notch.
+     */
+    private void step() {
+        boolean[] atNotch = _atNotch;
+        int[] positions = _positions;
+        for (int k : _movingSlots) {
+            int posn = positions[k];
+            atNotch[k] = (_notchBits[k][posn >>> 6] & (1L << posn)) != 0;
+        }
+        int last = _numRotors - 1;
+        for (int k : _movingSlots) {
+            if (k == last
+                || (k > 0 && (atNotch[k] && _leftRotates[k]
+                              || atNotch[k + 1]))) {
+                int posn = positions[k] + 1;
+                positions[k] = posn == _alphabet.size() ? 0 : posn;
+                if (k != last) {
+                    slowMoved();
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the number of characters converted since my rotors were
+     * last set, as changed by seek().
+     */
+    long position() {
+        return _position;
+    }
+
+    /**
+     * Put my rotors in the state they would reach after converting
+     * POSITION characters from the setting they were last given by
+     * setRotors() or setrings().  Since the rightmost rotor returns to
+     * the same place every size() keystrokes, the state after each such
+     * period is a function of the state before it; this goes around any
+     * cycle in that sequence of states at most once.
+     */
+    void seek(long position) {
+        if (position < 0) {
+            throw error("negative machine position");
+        }
+        int n = _alphabet.size();
+        long periods = position / n;
+        Cycle cycle = _cycle.get();
+        if (periods > 0 && cycle == null) {
+            cycle = findCycle(periods);
+            if (cycle != null) {
+                _cycle.compareAndSet(null, cycle);
+            }
+        }
+        if (cycle != null && periods > cycle.start) {
+            periods = cycle.start + (periods - cycle.start) % cycle.length;
+        }
+        System.arraycopy(_origin, 0, _positions, 0, _positions.length);
+        for (long k = 0; k < periods; k += 1) {
+            advance(n);
+        }
+        advance(position % n);
+        _position = position;
+        slowMoved();
+    }
+
+    /**
+     * Return a machine in the same state as I, with its own state
+     * vectors and the same rotors, plugboard and origin.
+     */
+    Machine copy() {
+        Machine result = new Machine(_definition);
+        result._rotors = _rotors;
+        result._plugboard = _plugboard;
+        result._settings = _settings.clone();
+        result._rings = _rings.clone();
+        result._notchBits = _notchBits.clone();
+        result._movingSlots = _movingSlots;
+        result._leftRotates = _leftRotates;
+        result._positions = _positions.clone();
+        result._origin = _origin;
+        result._atNotch = new boolean[_atNotch.length];
+        result._position = _position;
+        result._cycle = _cycle;
+        result._engine = _engine;
+        result._table = _table;
+        result._tableKnown = _tableKnown;
+        if (_slow != null) {
+            result._slow = new int[_slow.length];
+            result._slowStamps = new int[_slowStamps.length];
+        }
+        return result;
+    }
+
+    /**
+     * Return the cycle in the sequence of states reached from my origin
+     * after each whole period of the rightmost rotor, found using
+     * Brent's algorithm.  Gives up, returning null, after about LIMIT
+     * periods.  Leaves my positions undefined.
+     */
+    private Cycle findCycle(long limit) {
+        int n = _alphabet.size();
+        int[] tortoise = _origin.clone();
+        System.arraycopy(_origin, 0, _positions, 0, _positions.length);
+        advance(n);
+        long power = 1, length = 1, evaluations = 1;
+        while (!Arrays.equals(tortoise, _positions)) {
+            if (evaluations > limit) {
+                return null;
+            }
+            if (power == length) {
+                System.arraycopy(_positions, 0, tortoise, 0,
+                                 tortoise.length);
+                power *= 2;
+                length = 0;
+            }
+            advance(n);
+            length += 1;
+            evaluations += 1;
+        }
+        int[] hare = _origin.clone();
+        System.arraycopy(_origin, 0, _positions, 0, _positions.length);
+        for (long k = 0; k < length; k += 1) {
+            advance(n);
+        }
+        System.arraycopy(_positions, 0, hare, 0, hare.length);
+        System.arraycopy(_origin, 0, tortoise, 0, tortoise.length);
+        long start = 0;
+        while (!Arrays.equals(tortoise, hare)) {
+            System.arraycopy(tortoise, 0, _positions, 0, _positions.length);
+            advance(n);
+            System.arraycopy(_positions, 0, tortoise, 0, tortoise.length);
+            System.arraycopy(hare, 0, _positions, 0, _positions.length);
+            advance(n);
+            System.arraycopy(_positions, 0, hare, 0, hare.length);
+            start += 1;
+        }
+        return new Cycle(start, length);
+    }
+
+    /**
+     * Step my rotors COUNT times without converting anything, jumping
+     * over runs of keystrokes in which only the rightmost rotor moves.
+     */
+    private void advance(long count) {
+        int n = _alphabet.size();
+        while (count > 0) {
+            long quiet = Math.min(count, quietSteps());
+            if (quiet > 0) {
+                int last = _numRotors - 1;
+                _positions[last] = (int) ((_positions[last] + quiet) % n);
+                count -= quiet;
+            } else {
+                step();
+                count -= 1;
+            }
+        }
+    }
+
+    /**
+     * Return the number of coming keystrokes in which only the rightmost
+     * rotor will move: zero if some other rotor moves on the next one,
+     * and Long.MAX_VALUE if only the rightmost rotor will ever move.
+     */
+    private long quietSteps() {
+        int last = _numRotors - 1;
+        boolean lastMoves = false, notchMatters = false;
+        for (int k : _movingSlots) {
+            if (k == last) {
+                lastMoves = true;
+            } else if (k > 0) {
+                int posn = _positions[k];
+                if (_leftRotates[k]
+                    && (_notchBits[k][posn >>> 6] & (1L << posn)) != 0) {
+                    return 0;
+                }
+                if (k == last - 1) {
+                    notchMatters = true;
+                }
+            }
+        }
+        if (!lastMoves) {
+            return 0;
+        }
+        if (!notchMatters) {
+            return Long.MAX_VALUE;
+        }
+        return notchDistance(_notchBits[last], _positions[last]);
+    }
+
+    /**
+     * Return the number of steps from setting POSN to the next setting,
+     * counting POSN itself, whose bit is set in BITS, or Long.MAX_VALUE
+     * if there is none.
+     */
+    private long notchDistance(long[] bits, int posn) {
+        int n = _alphabet.size();
+        for (int d = 0; d < n; d += 1) {
+            int p = posn + d < n ? posn + d : posn + d - n;
+            if ((bits[p >>> 6] & (1L << p)) != 0) {
+                return d;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
     /**
      * Returns the encoding/decoding of MSG, updating the state of
      * the rotors accordingly.
      */
     String convert(String msg) {
-        String msgs = msg.replaceAll(" ", "");
-        String result = "";
-        for (int i = 0; i < msgs.length(); i = i + 1) {
-            char character = msgs.charAt(i);
+        char[] buf = msg.toCharArray();
+        int n = convert(buf, 0, buf.length, buf, 0);
+        return new String(buf, 0, n);
+    }
+
+    /**
+     * Convert the LEN characters of IN starting at OFF, skipping blanks,
+     * into OUT starting at OUTOFF, updating the state of the rotors
+     * accordingly.  Returns the number of characters written.  IN and
+     * OUT may be the same array provided OUTOFF <= OFF.
+     */
+    int convert(char[] in, int off, int len, char[] out, int outOff) {
+        int w = outOff;
+        for (int i = off; i < off + len; i = i + 1) {
+            char character = in[i];
+            if (character == ' ') {
+                continue;
+            }
             int characterint = _alphabet.toInt(character);
-            int resultint = this.convert(characterint);
-            char out = _alphabet.toChar(resultint);
-            result = result + out;
+            if (characterint < 0) {
+                throw error("character '%c' not in alphabet", character);
+            }
+            out[w] = _alphabet.toChar(convert(characterint));
+            w = w + 1;
         }
-        return result;
+        return w - outOff;
     }
 
+    /**
+     * Convert the remaining characters of IN, skipping blanks, and put
+     * the results into OUT, updating the state of the rotors accordingly.
+     * Returns the number of characters written.  OUT must have room for
+     * IN.remaining() characters; if it does not, throws
+     * BufferOverflowException without converting anything.  IN and OUT
+     * may be views of the same buffer provided OUT's position does not
+     * pass IN's.
+     */
+    int convert(CharBuffer in, CharBuffer out) {
+        if (out.remaining() < in.remaining()) {
+            throw new BufferOverflowException();
+        }
+        if (in.hasArray() && out.hasArray()) {
+            int len = in.remaining();
+            int n = convert(in.array(), in.arrayOffset() + in.position(),
+                            len, out.array(),
+                            out.arrayOffset() + out.position());
+            in.position(in.position() + len);
+            out.position(out.position() + n);
+            return n;
+        }
+        int n = 0;
+        while (in.hasRemaining()) {
+            char character = in.get();
+            if (character == ' ') {
+                continue;
+            }
+            int characterint = _alphabet.toInt(character);
+            if (characterint < 0) {
+                throw error("character '%c' not in alphabet", character);
+            }
+            out.put(_alphabet.toChar(convert(characterint)));
+            n = n + 1;
+        }
+        return n;
+    }
+
+    /**
+     * The shared description of my kind of machine.
+     */
+    private final MachineDefinition _definition;
+
     /**
      * Common alphabet of my rotors.
      */
@@ -142,17 +663,12 @@ class Machine {
     /**
      * Set the number of my rotors.
      */
-    private int _numRotors;
+    private final int _numRotors;
 
     /**
      * Set the number of my pawls.
      */
-    private int _pawls;
-
-    /**
-     * Set the whole collection of my rotors.
-     */
-    private Collection<Rotor> _allRotors;
+    private final int _pawls;
 
     /**
      * Set the rotors that I used.
@@ -164,4 +680,163 @@ class Machine {
      */
     private Permutation _plugboard;
 
+    /**
+     * The setting last given to the rotor in each slot, as an index into
+     * my alphabet.
+     */
+    private int[] _settings;
+
+    /**
+     * The ring of the rotor in each slot, as an index into my alphabet.
+     */
+    private int[] _rings;
+
+    /**
+     * The current setting of the rotor in each slot, less its ring.
+     */
+    private int[] _positions;
+
+    /**
+     * The notch bit set of the rotor in each slot, or null if it has
+     * no notches.
+     */
+    private long[][] _notchBits;
+
+    /**
+     * The slots, in increasing order, whose rotors rotate.
+     */
+    private int[] _movingSlots;
+
+    /**
+     * True for each slot whose left neighbor rotates.
+     */
+    private boolean[] _leftRotates;
+
+    /**
+     * Scratch space for step(): whether each slot was at a notch before
+     * the current keystroke.  Has an extra, always false, entry at the
+     * right end.
+     */
+    private boolean[] _atNotch;
+
+    /**
+     * The positions my rotors were last set to; position() zero.
+     */
+    private int[] _origin;
+
+    /**
+     * Number of characters converted since my rotors were last set.
+     */
+    private long _position;
+
+    /**
+     * The cycle reached from my origin, or null until found; the
+     * reference is shared with my copies, which may be on other
+     * threads.
+     */
+    private AtomicReference<Cycle> _cycle;
+
+    /**
+     * My engine (see setEngine), as an index into ENGINES.
+     */
+    private int _engine;
+
+    /**
+     * For the composite engine: entry C is throughSlow(C), if
+     * _slowStamps[C] is _slowStamp.
+     */
+    private int[] _slow;
+
+    /**
+     * Stamp of each entry of _slow: the value of _slowStamp when it was
+     * computed, or 0.
+     */
+    private int[] _slowStamps;
+
+    /**
+     * Current stamp of _slow, changed whenever a rotor other than the
+     * rightmost moves.  Never 0.
+     */
+    private int _slowStamp = 1;
+
+    /**
+     * For keystroke(): a number of coming keystrokes in which only the
+     * rightmost rotor will move (see quietSteps), or 0 if unknown.
+     */
+    private long _quiet;
+
+    /**
+     * For the table engine: the StateTable for my rotors, or null if
+     * there is none within budget.  Meaningful only if _tableKnown.
+     */
+    private byte[] _table;
+
+    /**
+     * True iff _table is current for my rotors.
+     */
+    private boolean _tableKnown;
+
+    /**
+     * For the table engine: StateTable.stateBase of my positions, as of
+     * the last keystroke in which a rotor other than the rightmost could
+     * have moved.
+     */
+    private int _stateBase;
+
+    /**
+     * For the tree engine: the forward paths through the rotors in
+     * slots 1 .. numRotors() - 2, at the positions in _treePositions,
+     * or null if it must be built.
+     */
+    private PermutationTree _tree;
+
+    /**
+     * For the tree engine: the position of each slot in _tree.
+     */
+    private int[] _treePositions;
+
+    /**
+     * Names of the engines, by number.
+     */
+    private static final String[] ENGINES = {
+        "direct", "composite", "table", "tree"
+    };
+
+    /**
+     * Numbers of the engines in ENGINES.
+     */
+    private static final int COMPOSITE = 1, TABLE = 2, TREE = 3;
+
+    /**
+     * Name of the engine of new machines: "direct", unless the system
+     * property enigma.engine names another.
+     */
+    private static final String DEFAULT_ENGINE =
+        System.getProperty("enigma.engine", "direct");
+
+    /**
+     * The eventual cycle in the sequence of states reached from an
+     * origin after whole periods of the rightmost rotor.
+     */
+    private static final class Cycle {
+        /**
+         * The cycle whose first state is reached after START periods and
+         * recurs every LENGTH periods.
+         */
+        Cycle(long start, long length) {
+            this.start = start;
+            this.length = length;
+        }
+
+        /**
+         * Number of periods to the first state that recurs.
+         */
+        private final long start;
+
+        /**
+         * Number of periods after which that state recurs.
+         */
+        private final long length;
+    }
+
 }
@@ -0,0 +1,113 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * The fixed description of an enigma machine: its alphabet, its number
+ * of rotor slots and pawls, and the rotors available to it.  A
+ * definition is never changed once built, so any number of Machines,
+ * on any number of threads, may share one.
+ *
+ * @author Yuanshan Chen
+ */
+class MachineDefinition {
+
+    /**
+     * A definition of machines with alphabet ALPHA, 1 < NUMROTORS rotor
+     * slots, and 0 <= PAWLS < NUMROTORS pawls.  ALLROTORS contains all
+     * the available rotors.
+     */
+    MachineDefinition(Alphabet alpha, int numRotors, int pawls,
+                      Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, new RotorCatalog(allRotors));
+    }
+
+    /**
+     * A definition of machines with alphabet ALPHA, 1 < NUMROTORS rotor
+     * slots, and 0 <= PAWLS < NUMROTORS pawls, whose available rotors
+     * are those in CATALOG.
+     */
+    MachineDefinition(Alphabet alpha, int numRotors, int pawls,
+                      RotorCatalog catalog) {
+        _alphabet = alpha;
+        _numRotors = numRotors;
+        _pawls = pawls;
+        _catalog = catalog;
+    }
+
+    /**
+     * Return a new machine of my kind, with no rotors inserted.
+     */
+    Machine newMachine() {
+        return new Machine(this);
+    }
+
+    /**
+     * Return my alphabet.
+     */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /**
+     * Return the number of rotor slots I have.
+     */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /**
+     * Return the number pawls (and thus rotating rotors) I have.
+     */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /**
+     * Return the catalog of my available rotors.
+     */
+    RotorCatalog catalog() {
+        return _catalog;
+    }
+
+    /**
+     * Return all my available rotors, building any not yet built.
+     */
+    Collection<Rotor> rotors() {
+        ArrayList<Rotor> result = new ArrayList<Rotor>(_catalog.size());
+        for (int k = 0; k < _catalog.size(); k += 1) {
+            result.add(_catalog.rotor(k));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Return my rotor named NAME.
+     */
+    Rotor rotor(String name) {
+        return _catalog.rotor(name);
+    }
+
+    /**
+     * Common alphabet of my rotors.
+     */
+    private final Alphabet _alphabet;
+
+    /**
+     * The number of my rotor slots.
+     */
+    private final int _numRotors;
+
+    /**
+     * The number of my pawls.
+     */
+    private final int _pawls;
+
+    /**
+     * The whole collection of my rotors.
+     */
+    private final RotorCatalog _catalog;
+
+}
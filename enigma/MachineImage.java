@@ -0,0 +1,332 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * Binary machine images: machine definitions compiled ahead of time,
+ * with each rotor's forward and inverse tables and notches already
+ * worked out, so that they can be loaded by mapping the file rather
+ * than by parsing it.  Main accepts an image wherever it accepts a
+ * configuration file.
+ *
+ * An image is a sequence of big-endian ints (and longs, for notches):
+ * MAGIC, VERSION, the alphabet size N, the number of rotor slots, the
+ * number of pawls, and the number of rotors R; the N code points of the
+ * alphabet; an index of R offsets from the start of the image of the
+ * rotors' records, in order of name; and then the records, in the order
+ * of the configuration.  A record is the rotor's kind (as for
+ * RotorCatalog), the length and UTF-16 units of its name, for a moving
+ * rotor the length and words of its notch bit set, and the N entries of
+ * its forward and then inverse tables.
+ *
+ * @author Yuanshan Chen
+ */
+class MachineImage {
+
+    /**
+     * Compile the configuration file ARGS[0] into the image file ARGS[1].
+     */
+    public static void main(String... args) {
+        try {
+            if (args.length != 2) {
+                throw error("Usage: MachineImage CONFIG IMAGE");
+            }
+            write(ConfigParser.parse(Paths.get(args[0]), args[0]),
+                  Paths.get(args[1]), args[1]);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * Return true iff FILE starts as an image does.  A file that cannot
+     * be read is not an image.
+     */
+    static boolean isImage(Path file) {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] head = in.readNBytes(4);
+            return head.length == 4 && ByteBuffer.wrap(head).getInt() == MAGIC;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * Write DEFINITION as an image to FILE, called NAME in messages.  The
+     * image is written to a new file that then replaces FILE, so that
+     * processes that have mapped the old contents of FILE are not
+     * disturbed.
+     */
+    static void write(MachineDefinition definition, Path file, String name) {
+        Alphabet alphabet = definition.alphabet();
+        int n = alphabet.size();
+        List<Rotor> rotors = new ArrayList<Rotor>(definition.rotors());
+        int[] offsets = new int[rotors.size()];
+        long offset = 4 * (HEADER_INTS + n + rotors.size());
+        for (int k = 0; k < rotors.size(); k += 1) {
+            if (offset > Integer.MAX_VALUE) {
+                throw error("%s: configuration too large for an image", name);
+            }
+            offsets[k] = (int) offset;
+            offset += recordSize(rotors.get(k), n);
+        }
+        Integer[] byName = new Integer[rotors.size()];
+        for (int k = 0; k < byName.length; k += 1) {
+            byName[k] = k;
+        }
+        Arrays.sort(byName, Comparator.comparing(k -> rotors.get(k).name()));
+
+        Path target = file.toAbsolutePath();
+        Path temp = target.resolveSibling("." + target.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(n);
+                out.writeInt(definition.numRotors());
+                out.writeInt(definition.numPawls());
+                out.writeInt(rotors.size());
+                for (int k = 0; k < n; k += 1) {
+                    out.writeInt(alphabet.toCodePoint(k));
+                }
+                for (int k : byName) {
+                    out.writeInt(offsets[k]);
+                }
+                for (Rotor rotor : rotors) {
+                    writeRecord(out, rotor);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                /* Nothing more to be done. */
+            }
+            throw error("could not write %s", name);
+        }
+    }
+
+    /**
+     * Return the size in bytes of the record of ROTOR, whose alphabet
+     * has N characters.
+     */
+    private static long recordSize(Rotor rotor, int n) {
+        long size = 8 + 2L * rotor.name().length() + 8L * n;
+        if (rotor.rotates()) {
+            size += 4 + 8 * ((n + 63) >>> 6);
+        }
+        return size;
+    }
+
+    /**
+     * Write the record of ROTOR to OUT.
+     */
+    private static void writeRecord(DataOutputStream out, Rotor rotor)
+        throws IOException {
+        out.writeInt(RotorCatalog.kindOf(rotor));
+        out.writeInt(rotor.name().length());
+        out.writeChars(rotor.name());
+        if (rotor.rotates()) {
+            long[] notches = rotor.notchBits(0);
+            out.writeInt(notches.length);
+            for (long word : notches) {
+                out.writeLong(word);
+            }
+        }
+        Permutation perm = rotor.permutation();
+        for (int k : perm.forwardTable()) {
+            out.writeInt(k);
+        }
+        for (int k : perm.inverseTable()) {
+            out.writeInt(k);
+        }
+    }
+
+    /**
+     * Return the definition in the image FILE, called NAME in messages,
+     * which is mapped into memory rather than read.
+     */
+    static MachineDefinition read(Path file, String name) {
+        ByteBuffer image;
+        try (FileChannel channel =
+                 FileChannel.open(file, StandardOpenOption.READ)) {
+            image = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                channel.size());
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+        try {
+            return read(image, name);
+        } catch (BufferUnderflowException excp) {
+            throw error("%s: machine image truncated", name);
+        }
+    }
+
+    /**
+     * Return the definition in IMAGE, called NAME in messages.  Only
+     * the names and kinds of its rotors are read now; the rest of each
+     * rotor's record is read when the rotor is first used.
+     */
+    private static MachineDefinition read(ByteBuffer image, String name) {
+        if (image.getInt() != MAGIC) {
+            throw error("%s is not a machine image", name);
+        }
+        int version = image.getInt();
+        if (version != VERSION) {
+            throw error("%s: unsupported machine image version %d",
+                        name, version);
+        }
+        int n = count(image, name);
+        int numRotors = image.getInt();
+        int pawls = image.getInt();
+        int numRecords = count(image, name);
+        int[] codePoints = new int[n];
+        image.asIntBuffer().get(codePoints);
+        for (int c : codePoints) {
+            if (!Character.isValidCodePoint(c)) {
+                throw error("%s: corrupt machine image", name);
+            }
+        }
+        Alphabet alphabet = WiringPool.alphabet(new String(codePoints, 0, n));
+        image.position(image.position() + 4 * n);
+        int[] offsets = new int[numRecords];
+        image.asIntBuffer().get(offsets);
+        String[] names = new String[numRecords];
+        byte[] kinds = new byte[numRecords];
+        for (int k = 0; k < numRecords; k += 1) {
+            ByteBuffer record = at(image, offsets[k], name);
+            int kind = record.getInt();
+            if (kind < RotorCatalog.MOVING || kind > RotorCatalog.REFLECTOR) {
+                throw error("%s: corrupt machine image", name);
+            }
+            kinds[k] = (byte) kind;
+            names[k] = readName(record, name);
+        }
+        return new MachineDefinition(
+            alphabet, numRotors, pawls,
+            new RotorCatalog(names, kinds,
+                             k -> rotor(image, offsets[k], alphabet, name)));
+    }
+
+    /**
+     * Return the rotor with alphabet ALPHABET whose record is at OFFSET
+     * in IMAGE, called NAME in messages.
+     */
+    private static Rotor rotor(ByteBuffer image, int offset,
+                               Alphabet alphabet, String name) {
+        try {
+            return readRecord(at(image, offset, name), alphabet, name);
+        } catch (BufferUnderflowException excp) {
+            throw error("%s: machine image truncated", name);
+        }
+    }
+
+    /**
+     * Return a view of IMAGE, called NAME in messages, positioned at
+     * OFFSET.  IMAGE itself is not changed.
+     */
+    private static ByteBuffer at(ByteBuffer image, int offset, String name) {
+        ByteBuffer result = image.duplicate();
+        if (offset < 0 || offset > result.limit()) {
+            throw error("%s: corrupt machine image", name);
+        }
+        result.position(offset);
+        return result;
+    }
+
+    /**
+     * Return the rotor name that starts at the position of IMAGE, called
+     * NAME in messages, and move past it.
+     */
+    private static String readName(ByteBuffer image, String name) {
+        char[] chars = new char[count(image, name)];
+        image.asCharBuffer().get(chars);
+        image.position(image.position() + 2 * chars.length);
+        return new String(chars);
+    }
+
+    /**
+     * Return the rotor with alphabet ALPHABET whose record starts at the
+     * position of IMAGE, called NAME in messages.
+     */
+    private static Rotor readRecord(ByteBuffer image, Alphabet alphabet,
+                                    String name) {
+        int kind = image.getInt();
+        String rotorName = readName(image, name);
+        long[] notches = null;
+        if (kind == RotorCatalog.MOVING) {
+            notches = new long[count(image, name)];
+            image.asLongBuffer().get(notches);
+            image.position(image.position() + 8 * notches.length);
+        }
+        int n = alphabet.size();
+        int[] forward = new int[n], inverse = new int[n];
+        image.asIntBuffer().get(forward).get(inverse);
+        try {
+            Permutation perm = WiringPool.permutation(forward, inverse,
+                                                      alphabet);
+            switch (kind) {
+            case RotorCatalog.MOVING:
+                return new MovingRotor(rotorName, perm, notches);
+            case RotorCatalog.FIXED:
+                return new FixedRotor(rotorName, perm);
+            default:
+                return new Reflector(rotorName, perm);
+            }
+        } catch (EnigmaException excp) {
+            throw error("%s: rotor %s: %s", name, rotorName,
+                        excp.getMessage());
+        }
+    }
+
+    /**
+     * Return the count that is the next int of IMAGE, called NAME in
+     * messages, checking that it is neither negative nor more than the
+     * bytes left in IMAGE.
+     */
+    private static int count(ByteBuffer image, String name) {
+        int count = image.getInt();
+        if (count < 0 || count > image.remaining()) {
+            throw error("%s: corrupt machine image", name);
+        }
+        return count;
+    }
+
+    /**
+     * The first int of every image.
+     */
+    static final int MAGIC = 0x00454e47;
+
+    /**
+     * The version of the image format I write and read.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Number of ints before the alphabet in an image.
+     */
+    private static final int HEADER_INTS = 6;
+
+}
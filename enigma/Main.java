@@ -1,12 +1,36 @@
 package enigma;
 
-import java.io.File;
+import java.io.Closeable;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
 
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.NoSuchElementException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
 
 import static enigma.EnigmaException.*;
 
@@ -27,6 +51,13 @@ public final class Main {
      * file for processed messages.  Otherwise, output goes to the
      * standard output. Exits normally if there are no errors in the input;
      * otherwise with code 1.
+     * ARGS may begin with options: --stream processes the input through
+     * a fixed-size buffer rather than a line at a time, so that memory
+     * use does not depend on line length.  --mmap, given both input and
+     * output files, memory-maps the input and writes through a direct
+     * buffer; it otherwise behaves as --stream.  --parallel converts long
+     * message lines in chunks on all available processors.  --sections
+     * converts the messages under each setting line concurrently.
      */
     public static void main(String... args) {
         try {
@@ -42,22 +73,71 @@ public final class Main {
      * Check ARGS and open the necessary files (see comment on main).
      */
     Main(String[] args) {
+        this(args, null, System.in, System.out);
+    }
+
+    /**
+     * Check ARGS and open the necessary files as for main, taking file
+     * names relative to DIRECTORY (the current directory if null), and
+     * using STDIN and STDOUT as the standard input and output.
+     */
+    Main(String[] args, Path directory, InputStream stdin,
+         PrintStream stdout) {
+        _directory = directory;
+        _stdin = stdin;
+        _stdout = stdout;
+        int first = 0;
+        while (first < args.length && args[first].startsWith("--")) {
+            switch (args[first]) {
+            case "--stream":
+                _stream = true;
+                break;
+            case "--mmap":
+                _mapped = true;
+                break;
+            case "--parallel":
+                _parallel = true;
+                break;
+            case "--sections":
+                _sections = true;
+                break;
+            default:
+                throw error("unknown option %s", args[first]);
+            }
+            first += 1;
+        }
+        args = Arrays.copyOfRange(args, first, args.length);
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _configName = args[0];
+        _configFile = resolve(_configName);
+        if (!Files.isReadable(_configFile) || Files.isDirectory(_configFile)) {
+            throw error("could not open %s", _configName);
+        }
 
-        if (args.length > 1) {
+        if (_mapped && args.length == 3) {
+            _inChannel = getChannel(args[1], StandardOpenOption.READ);
+            _outChannel = getChannel(args[2], StandardOpenOption.WRITE,
+                                     StandardOpenOption.CREATE,
+                                     StandardOpenOption.TRUNCATE_EXISTING);
+            return;
+        }
+        _stream |= _mapped;
+        _mapped = false;
+        if (_stream) {
+            _reader = getReader(args.length > 1 ? args[1] : null);
+        } else if (args.length > 1) {
             _input = getInput(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            _input = new Scanner(_stdin);
         }
 
         if (args.length > 2) {
             _output = getOutput(args[2]);
         } else {
-            _output = System.out;
+            _output = stdout;
         }
     }
 
@@ -66,7 +146,34 @@ public final class Main {
      */
     private Scanner getInput(String name) {
         try {
-            return new Scanner(new File(name));
+            return new Scanner(resolve(name).toFile());
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /**
+     * Return a Reader for the file named NAME, or for the standard input
+     * if NAME is null.
+     */
+    private Reader getReader(String name) {
+        if (name == null) {
+            return new InputStreamReader(_stdin);
+        }
+        try {
+            return new InputStreamReader(
+                new FileInputStream(resolve(name).toFile()));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /**
+     * Return a FileChannel on the file named NAME, opened with OPTIONS.
+     */
+    private FileChannel getChannel(String name, OpenOption... options) {
+        try {
+            return FileChannel.open(resolve(name), options);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -77,18 +184,64 @@ public final class Main {
      */
     private PrintStream getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            return new PrintStream(resolve(name).toFile());
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
+    /**
+     * Return the path of the file named NAME.
+     */
+    private Path resolve(String name) {
+        Path path = Paths.get(name);
+        return _directory == null ? path : _directory.resolve(path);
+    }
+
+    /**
+     * Close my files, including my standard input if I read it, and
+     * flush my standard output.
+     */
+    void close() {
+        try {
+            for (Closeable file : new Closeable[] {
+                    _input, _reader, _inChannel, _outChannel }) {
+                if (file != null) {
+                    file.close();
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not close file");
+        }
+        if (_output == _stdout) {
+            _output.flush();
+        } else if (_output != null) {
+            _output.close();
+        }
+    }
+
     /**
      * Configure an Enigma machine from the contents of configuration
-     * file _config and apply it to the messages in _input, sending the
+     * file _configFile and apply it to the messages in _input, sending the
      * results to _output.
      */
-    private void process() {
+    void process() {
+        if (_mapped) {
+            processMapped();
+        } else if (_stream) {
+            processStream();
+        } else if (_sections) {
+            processSections();
+        } else {
+            processLines();
+        }
+    }
+
+    /**
+     * Configure an Enigma machine as for process(), and apply it to the
+     * messages in _input a line at a time.
+     */
+    private void processLines() {
         machine = readConfig();
         rotorsname = new String[machine.numRotors()];
         if (_input.hasNextLine()) {
@@ -100,6 +253,7 @@ public final class Main {
                 throw new EnigmaException("No setting line");
             } else {
                 readsetting(f);
+                beginMessage();
             }
             while (_input.hasNextLine()) {
                 String firstline = _input.nextLine();
@@ -110,26 +264,340 @@ public final class Main {
                 if (firstline.charAt(0) != '*') {
                     coding(firstline);
                 } else if (firstline.charAt(0) == '*') {
+                    endMessage();
                     readsetting(firstline);
+                    beginMessage();
                 }
             }
+            endMessage();
         } else {
             throw new EnigmaException("Wrong configuration format");
         }
     }
 
     /**
-     * To test whether the setting LINE is right format.
+     * Configure an Enigma machine as for process(), and apply it to the
+     * messages in _input, converting the sections that follow each
+     * setting line concurrently, each with its own copy of the machine.
+     * Setting lines are applied in order on this thread.  Output is
+     * written in input order, and the first error in input order is
+     * reported after the output that precedes it, as by process().
      */
-    private void testfirstline(String[] line) {
-        boolean flag = false;
-        for (int i = 0; i < rflnames.size(); i = i + 1) {
-            if (rflnames.get(i).equals(line[1])) {
-                flag = true;
+    private void processSections() {
+        machine = readConfig();
+        rotorsname = new String[machine.numRotors()];
+        if (!_input.hasNextLine()) {
+            throw new EnigmaException("Wrong configuration format");
+        }
+        String setting = _input.nextLine();
+        if (setting.length() == 0 && _input.hasNextLine()) {
+            setting = _input.nextLine();
+        }
+        if (setting.length() == 0 || setting.charAt(0) != '*') {
+            throw new EnigmaException("No setting line");
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<Section>> pending = new ArrayDeque<>();
+        try {
+            while (setting != null) {
+                try {
+                    readsetting(setting);
+                } catch (EnigmaException excp) {
+                    while (!pending.isEmpty()) {
+                        writeSection(pending.remove());
+                    }
+                    throw excp;
+                }
+                Machine copy = machine.copy();
+                ArrayList<String> lines = new ArrayList<>();
+                setting = null;
+                while (_input.hasNextLine()) {
+                    String line = _input.nextLine();
+                    if (line.length() > 0 && line.charAt(0) == '*') {
+                        setting = line;
+                        break;
+                    }
+                    lines.add(line);
+                }
+                pending.add(pool.submit(() -> convertSection(copy, lines)));
+                if (pending.size() > SECTIONS_PER_THREAD * threads) {
+                    writeSection(pending.remove());
+                }
+            }
+            while (!pending.isEmpty()) {
+                writeSection(pending.remove());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Return the output for the message LINES of one section, converted
+     * with M, and the error that ended them, if any.
+     */
+    private Section convertSection(Machine m, List<String> lines) {
+        long start = clock();
+        EnigmaEvents.MessageConverted event =
+            new EnigmaEvents.MessageConverted();
+        event.begin();
+        Section result = new Section();
+        String newline = System.lineSeparator();
+        for (String line : lines) {
+            if (line.length() == 0) {
+                result.output.append(newline);
+                continue;
+            }
+            char[] chars = line.toCharArray();
+            if (!isMessage(chars)) {
+                result.error =
+                    new EnigmaException("Wrong format of input words");
                 break;
             }
+            int n = m.convert(chars, 0, chars.length, chars, 0);
+            result.characters += n;
+            for (int i = 0; i < n; i += 5) {
+                if (i > 0) {
+                    result.output.append(' ');
+                }
+                result.output.append(chars, i, Math.min(5, n - i));
+            }
+            if (n > 0) {
+                result.output.append(newline);
+            }
+        }
+        if (_metrics != null) {
+            _metrics.converted(result.characters, clock() - start);
+        }
+        if (event.shouldCommit()) {
+            event.rotors = m.rotorNames();
+            event.alphabetSize = _alphabet.size();
+            event.characters = result.characters;
+            event.commit();
+        }
+        return result;
+    }
+
+    /**
+     * Return true iff every character of CHARS is a blank or in my
+     * alphabet.
+     */
+    private boolean isMessage(char[] chars) {
+        for (char c : chars) {
+            if (c != ' ' && !_alphabet.contains(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Wait for SECTION, write its output, and throw its error, if any.
+     */
+    private void writeSection(Future<Section> section) {
+        Section result;
+        try {
+            result = section.get();
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw new RuntimeException(excp.getCause());
+        }
+        long start = clock();
+        _output.print(result.output);
+        if (_metrics != null) {
+            _metrics.phase(EnigmaMetrics.OUTPUT, clock() - start);
+            _metrics.message(result.characters);
+        }
+        if (result.error != null) {
+            throw result.error;
+        }
+    }
+
+    /**
+     * The result of converting the messages of one section.
+     */
+    private static final class Section {
+        /**
+         * The text to be output.
+         */
+        private final StringBuilder output = new StringBuilder();
+
+        /**
+         * The error that ended the section, or null.
+         */
+        private EnigmaException error;
+
+        /**
+         * Number of characters converted.
+         */
+        private long characters;
+    }
+
+    /**
+     * Configure an Enigma machine as for process(), and apply it to the
+     * messages read from _reader a buffer at a time, converting message
+     * characters as they arrive.  Only setting lines are held whole.
+     */
+    private void processStream() {
+        machine = readConfig();
+        rotorsname = new String[machine.numRotors()];
+        streamInput();
+    }
+
+    /**
+     * Apply the machine to the messages read from _reader a buffer at a
+     * time, sending the results to _output.
+     */
+    private void streamInput() {
+        MessageStream stream =
+            newMessageStream(new OutputStreamWriter(_output));
+        char[] buf = new char[MessageStream.BUFFER_SIZE];
+        long start = clock();
+        try {
+            for (int n = _reader.read(buf); n >= 0; n = _reader.read(buf)) {
+                stream.accept(buf, 0, n);
+            }
+        } catch (IOException excp) {
+            throw error("could not read input");
+        } finally {
+            stream.flush();
+        }
+        stream.finish();
+        endStream(stream, start);
+    }
+
+    /**
+     * Configure an Enigma machine as for process(), and apply it to the
+     * messages in the memory-mapped file _inChannel, writing results to
+     * _outChannel.  Falls back to processStream() for alphabets that are
+     * not ASCII.
+     */
+    private void processMapped() {
+        machine = readConfig();
+        rotorsname = new String[machine.numRotors()];
+        if (!isAscii(_alphabet)) {
+            _reader = Channels.newReader(_inChannel,
+                                         Charset.defaultCharset().name());
+            _output = new PrintStream(Channels.newOutputStream(_outChannel));
+            streamInput();
+            return;
+        }
+        MessageStream stream =
+            newMessageStream(new ChannelWriter(_outChannel));
+        long start = clock();
+        try {
+            long size = _inChannel.size();
+            for (long pos = 0; pos < size; pos += MAP_SIZE) {
+                MappedByteBuffer bytes = _inChannel.map(
+                    FileChannel.MapMode.READ_ONLY, pos,
+                    Math.min(MAP_SIZE, size - pos));
+                stream.accept(bytes);
+            }
+        } catch (IOException excp) {
+            throw error("could not read input");
+        } finally {
+            stream.flush();
+        }
+        stream.finish();
+        endStream(stream, start);
+    }
+
+    /**
+     * Return a MessageStream over my alphabet that applies setting
+     * lines with readsetting and writes to OUT.
+     */
+    private MessageStream newMessageStream(Writer out) {
+        return new MessageStream(_alphabet, line -> {
+            readsetting(line);
+            return machine;
+        }, out, _metrics);
+    }
+
+    /**
+     * Record the characters STREAM converted, and the time since START,
+     * as conversion.
+     */
+    private void endStream(MessageStream stream, long start) {
+        if (_metrics != null) {
+            _metrics.converted(stream.converted(), clock() - start);
+        }
+    }
+
+    /**
+     * Record the start of a message to be converted by processLines().
+     */
+    private void beginMessage() {
+        _messageEvent = new EnigmaEvents.MessageConverted();
+        _messageEvent.begin();
+    }
+
+    /**
+     * Record the end of the message being converted by processLines().
+     */
+    private void endMessage() {
+        if (_metrics != null) {
+            _metrics.message(_messageSize);
+        }
+        if (_messageEvent.shouldCommit()) {
+            _messageEvent.rotors = machine.rotorNames();
+            _messageEvent.alphabetSize = _alphabet.size();
+            _messageEvent.characters = _messageSize;
+            _messageEvent.commit();
+        }
+        _messageSize = 0;
+    }
+
+    /**
+     * Return the current time in nanoseconds if I am keeping metrics,
+     * and otherwise 0.
+     */
+    private long clock() {
+        return _metrics == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Return true iff every character of ALPHA is ASCII.
+     */
+    private static boolean isAscii(Alphabet alpha) {
+        for (int i = 0; i < alpha.size(); i += 1) {
+            if (alpha.toCodePoint(i) > MAX_ASCII) {
+                return false;
+            }
         }
-        if (!flag) {
+        return true;
+    }
+
+    /**
+     * Return the machine configured from _configFile, which is read on first
+     * use, after setting it according to the setting LINE.
+     */
+    Machine configure(String line) {
+        alphabet();
+        readsetting(line);
+        return machine;
+    }
+
+    /**
+     * Return the alphabet of _configFile, which is read on first use.
+     */
+    Alphabet alphabet() {
+        if (machine == null) {
+            machine = readConfig();
+            rotorsname = new String[machine.numRotors()];
+        }
+        return _alphabet;
+    }
+
+    /**
+     * To test whether the setting LINE is right format.
+     */
+    private void testfirstline(String[] line) {
+        if (_catalog.kind(line[1]) != RotorCatalog.REFLECTOR) {
             throw new EnigmaException("Not start with an reflector");
         }
         for (int i = 0; i < line.length; i = i + 1) {
@@ -157,10 +625,8 @@ public final class Main {
         }
         int counta = 0;
         for (int i = 1; i < line.length - countpb; i = i + 1) {
-            for (int j = 0; j < allRotorsname.size(); j = j + 1) {
-                if (line[i].equals(allRotorsname.get(j))) {
-                    counta = counta + 1;
-                }
+            if (_catalog.contains(line[i])) {
+                counta = counta + 1;
             }
         }
         if (counta != rtnum) {
@@ -169,19 +635,46 @@ public final class Main {
     }
 
     /**
-     * Read the setting LINE and set the machine.
+     * Read the setting LINE and set the machine, taking it from
+     * _settingCache if LINE has been seen before.
      */
     private void readsetting(String line) {
+        long start = clock();
+        EnigmaEvents.SettingApplied event =
+            new EnigmaEvents.SettingApplied();
+        event.begin();
+        Machine cached = _settingCache.get(line);
+        if (cached != null) {
+            machine = cached;
+        } else {
+            applySetting(line);
+            _settingCache.put(line, machine);
+        }
+        if (_metrics != null) {
+            _metrics.phase(EnigmaMetrics.SETTING, clock() - start);
+            _metrics.settingCache(cached != null);
+        }
+        if (event.shouldCommit()) {
+            event.rotors = machine.rotorNames();
+            event.alphabetSize = _alphabet.size();
+            event.cached = cached != null;
+            event.commit();
+        }
+    }
+
+    /**
+     * Check the setting LINE and set the machine according to it.
+     */
+    private void applySetting(String line) {
         String[] splitline = line.split(" ");
         if (!(splitline.length >= machine.numRotors() + 2)) {
             throw new EnigmaException("Wrong number of argument");
         }
         testfirstline(splitline);
+        HashSet<String> used = new HashSet<String>();
         for (int i = 1; i < machine.numRotors() + 1; i = i + 1) {
-            for (int z = i + 1; z < machine.numRotors() + 1; z = z + 1) {
-                if (splitline[i].equals(splitline[z])) {
-                    throw new EnigmaException("Duplicate rotors");
-                }
+            if (!used.add(splitline[i])) {
+                throw new EnigmaException("Duplicate rotors");
             }
         }
         String rotorsetting = splitline[machine.numRotors() + 1];
@@ -228,10 +721,83 @@ public final class Main {
      * Read the input LINE and do the coding job.
      */
     private void coding(String line) {
+        if (_parallel && line.length() >= CHUNK_SIZE) {
+            parallelCoding(line);
+            return;
+        }
         testsecondline(line);
         String result = "";
+        long start = clock();
         result = machine.convert(line);
+        long converted = clock();
         printMessageLine(result);
+        _messageSize += result.length();
+        if (_metrics != null) {
+            _metrics.converted(result.length(), converted - start);
+            _metrics.phase(EnigmaMetrics.OUTPUT, clock() - converted);
+        }
+    }
+
+    /**
+     * Convert and print the message LINE as coding() does, splitting it
+     * into chunks that are converted concurrently, each by a copy of the
+     * machine moved straight to the chunk's first character.
+     */
+    private void parallelCoding(String line) {
+        int chunks = (line.length() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        long[] starts = new long[chunks + 1];
+        IntStream.range(0, chunks).parallel().forEach(k -> {
+            int count = 0;
+            int end = Math.min(line.length(), (k + 1) * CHUNK_SIZE);
+            for (int i = k * CHUNK_SIZE; i < end; i += 1) {
+                if (line.charAt(i) != ' ') {
+                    count += 1;
+                }
+            }
+            starts[k + 1] = count;
+        });
+        for (int k = 0; k < chunks; k += 1) {
+            starts[k + 1] += starts[k];
+        }
+        long total = starts[chunks];
+        if (total == 0) {
+            return;
+        }
+        long start = clock();
+        long base = machine.position();
+        Machine probe = machine.copy();
+        probe.seek(base + total);
+        char[] out = new char[(int) (total + (total - 1) / 5)];
+        IntStream.range(0, chunks).parallel().forEach(k -> {
+            Machine m = probe.copy();
+            m.seek(base + starts[k]);
+            long g = starts[k];
+            int end = Math.min(line.length(), (k + 1) * CHUNK_SIZE);
+            for (int i = k * CHUNK_SIZE; i < end; i += 1) {
+                char c = line.charAt(i);
+                if (c == ' ') {
+                    continue;
+                }
+                int index = _alphabet.toInt(c);
+                if (index < 0) {
+                    throw new EnigmaException("Wrong format of input words");
+                }
+                int o = (int) (g + g / 5);
+                if (g % 5 == 0 && g > 0) {
+                    out[o - 1] = ' ';
+                }
+                out[o] = _alphabet.toChar(m.convert(index));
+                g += 1;
+            }
+        });
+        machine.seek(base + total);
+        long converted = clock();
+        _output.println(out);
+        _messageSize += total;
+        if (_metrics != null) {
+            _metrics.converted(total, converted - start);
+            _metrics.phase(EnigmaMetrics.OUTPUT, clock() - converted);
+        }
     }
 
     /**
@@ -250,61 +816,80 @@ public final class Main {
 
     /**
      * Return an Enigma machine configured from the contents of configuration
-     * file _config.
+     * file _configFile, or from my definition if I have been given one.
      */
     private Machine readConfig() {
-        try {
-            String alpha = _config.next();
-            _alphabet = new Alphabet(alpha);
-            int numRotors = _config.nextInt();
-            rtnum = numRotors;
-            int pawls = _config.nextInt();
-            nextchar = _config.next();
-            while (_config.hasNext()) {
-                aname = nextchar;
-                achar = _config.next();
-                allRotors.add(readRotor());
-            }
-            for (Rotor x : allRotors) {
-                allRotorsname.add(x.name());
-            }
-            return new Machine(_alphabet, numRotors, pawls, allRotors);
+        long start = clock();
+        MachineDefinition definition = definition();
+        if (_metrics != null) {
+            _metrics.phase(EnigmaMetrics.CONFIG, clock() - start);
+        }
+        _alphabet = definition.alphabet();
+        rtnum = definition.numRotors();
+        _catalog = definition.catalog();
+        return definition.newMachine();
+    }
 
-        } catch (NoSuchElementException excp) {
-            throw new EnigmaException("configuration file truncated");
+    /**
+     * Return the definition of my machines, reading it from _configFile on
+     * first use.
+     */
+    MachineDefinition definition() {
+        if (_definition == null) {
+            _definition = readDefinition();
         }
+        return _definition;
     }
 
     /**
-     * Return a rotor, reading its description from _config.
+     * Use DEFINITION, instead of the contents of _configFile, for my
+     * machines.
      */
-    private Rotor readRotor() {
-        try {
-            String cycles = "";
-            String notches = "";
-            nextchar = _config.next();
-            while (nextchar.charAt(0) == '(' && _config.hasNext()) {
-                cycles = cycles + nextchar;
-                nextchar = _config.next();
+    void setDefinition(MachineDefinition definition) {
+        _definition = definition;
+        _settingCache.clear();
+    }
 
-            }
-            if (!_config.hasNext() && nextchar.charAt(0) == '(') {
-                cycles = cycles + nextchar;
-            }
-            Permutation perm = new Permutation(cycles, _alphabet);
-            if (achar.charAt(0) == 'M') {
-                notches = achar.substring(1);
-                return new MovingRotor(aname, perm, notches);
+    /**
+     * Record my work in METRICS, or nowhere if it is null, instead of
+     * in EnigmaMetrics.get().
+     */
+    void setMetrics(EnigmaMetrics metrics) {
+        _metrics = metrics;
+    }
 
-            } else if (achar.charAt(0) == 'N') {
-                return new FixedRotor(aname, perm);
-            } else {
-                rflnames.add(aname);
-                return new Reflector(aname, perm);
+    /**
+     * Return the cache of machines set up from setting lines.
+     */
+    SettingCache settingCache() {
+        return _settingCache;
+    }
+
+    /**
+     * Return the definition in configuration file _configFile, which
+     * may be a text configuration or a MachineImage.
+     */
+    private MachineDefinition readDefinition() {
+        EnigmaEvents.ConfigRead event = new EnigmaEvents.ConfigRead();
+        event.begin();
+        MachineDefinition result;
+        if (MachineImage.isImage(_configFile)) {
+            result = MachineImage.read(_configFile, _configName);
+        } else {
+            result = ConfigParser.parse(_configFile, _configName);
+        }
+        if (event.shouldCommit()) {
+            event.alphabetSize = result.alphabet().size();
+            event.slots = result.numRotors();
+            StringBuilder names = new StringBuilder();
+            RotorCatalog catalog = result.catalog();
+            for (int k = 0; k < catalog.size(); k += 1) {
+                names.append(k > 0 ? " " : "").append(catalog.name(k));
             }
-        } catch (NoSuchElementException excp) {
-            throw new EnigmaException("bad rotor description");
+            event.rotors = names.toString();
+            event.commit();
         }
+        return result;
     }
 
     /**
@@ -330,6 +915,73 @@ public final class Main {
         }
     }
 
+    /**
+     * Number of input characters per chunk in parallelCoding(); shorter
+     * message lines are converted sequentially.
+     */
+    static final int CHUNK_SIZE = 1 << 16;
+
+    /**
+     * Number of sections per worker thread that processSections() reads
+     * ahead of its output.
+     */
+    private static final int SECTIONS_PER_THREAD = 4;
+
+    /**
+     * Largest window of the input file mapped at once by processMapped().
+     */
+    private static final long MAP_SIZE = 1L << 30;
+
+    /**
+     * Largest ASCII code point.
+     */
+    private static final int MAX_ASCII = 0x7f;
+
+    /**
+     * Directory against which file names are resolved, or null for the
+     * current directory.
+     */
+    private final Path _directory;
+
+    /**
+     * The standard input.
+     */
+    private final InputStream _stdin;
+
+    /**
+     * The standard output.
+     */
+    private final PrintStream _stdout;
+
+    /**
+     * Where I record my work, or null if metrics are off.
+     */
+    private EnigmaMetrics _metrics = EnigmaMetrics.get();
+
+    /**
+     * Machines set up from the setting lines seen most recently.  Its
+     * capacity is the system property enigma.settingCache, if set.
+     */
+    private final SettingCache _settingCache = new SettingCache(
+        Integer.getInteger("enigma.settingCache",
+                           SettingCache.DEFAULT_CAPACITY));
+
+    /**
+     * Number of characters converted so far in the current message by
+     * processLines().
+     */
+    private long _messageSize;
+
+    /**
+     * The event for the message being converted by processLines().
+     */
+    private EnigmaEvents.MessageConverted _messageEvent;
+
+    /**
+     * Definition of my machines, or null until read.
+     */
+    private MachineDefinition _definition;
+
     /**
      * Alphabet used in this machine.
      */
@@ -341,40 +993,59 @@ public final class Main {
     private Scanner _input;
 
     /**
-     * Source of machine configuration.
+     * Source of input messages in streaming mode.
      */
-    private Scanner _config;
+    private Reader _reader;
 
     /**
-     * File for encoded/decoded messages.
+     * True iff input is to be processed by processStream().
      */
-    private PrintStream _output;
+    private boolean _stream;
 
     /**
-     * Create the name for a rotor.
+     * True iff long message lines are to be converted by parallelCoding().
      */
-    private String aname;
+    private boolean _parallel;
 
     /**
-     * Set the character of the rotor, check which type of rotor would it be.
-     * MOVINGROTOR OR FIXEDROTOR OR REFLECTOR.
+     * True iff input is to be processed by processSections().
      */
-    private String achar;
+    private boolean _sections;
 
     /**
-     * Set an argument for saving the next char.
+     * True iff input is to be processed by processMapped().
      */
-    private String nextchar;
+    private boolean _mapped;
 
     /**
-     * Set an rotors list of this machine.
+     * Input file in mapped mode.
      */
-    private ArrayList<Rotor> allRotors = new ArrayList<Rotor>();
+    private FileChannel _inChannel;
 
     /**
-     * Set an list for allrotors' name.
+     * Output file in mapped mode.
      */
-    private ArrayList<String> allRotorsname = new ArrayList<String>();
+    private FileChannel _outChannel;
+
+    /**
+     * Name of the configuration file, as given.
+     */
+    private String _configName;
+
+    /**
+     * The configuration file.
+     */
+    private Path _configFile;
+
+    /**
+     * File for encoded/decoded messages.
+     */
+    private PrintStream _output;
+
+    /**
+     * The rotors available to my machine.
+     */
+    private RotorCatalog _catalog;
 
     /**
      * Store the number of Machine's rotors.
@@ -391,11 +1062,6 @@ public final class Main {
      */
     private String[] rotorsname;
 
-    /**
-     * A String contains all the reflectors name.
-     */
-    private ArrayList<String> rflnames = new ArrayList<String>();
-
     /**
      * Set up a field for ring.
      */
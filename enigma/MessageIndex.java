@@ -0,0 +1,432 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * An index of the messages in a file in the input format of Main: each
+ * message is the text following a setting line, up to the next one.
+ * Records each message's setting line, where its text begins, how many
+ * characters it has, and the byte offset of every STRIDE-th character,
+ * so that any character of any message can be found by reading at most
+ * STRIDE characters.  Blanks and line terminators are not characters.
+ * Text before the first setting line, if any, forms a message with no
+ * setting.  The file must be ASCII.  An index records the size and
+ * modification time of the file it was built from, so that an index
+ * stored in a sidecar file is not used once the file has changed.
+ *
+ * @author Yuanshan Chen
+ */
+class MessageIndex {
+
+    /**
+     * Number of characters between recorded offsets.
+     */
+    static final int STRIDE = 1 << 12;
+
+    /**
+     * An index with no messages.
+     */
+    private MessageIndex() {
+    }
+
+    /**
+     * Return the index of the messages in FILE, which is open on PATH.
+     */
+    static MessageIndex build(FileChannel file, Path path) {
+        MessageIndex index = new MessageIndex();
+        Builder b = index.new Builder();
+        try {
+            index.stamp(path);
+            long size = file.size();
+            for (long pos = 0; pos < size; pos += WINDOW) {
+                ByteBuffer bytes = file.map(FileChannel.MapMode.READ_ONLY,
+                                            pos, Math.min(WINDOW, size - pos));
+                for (int i = 0; i < bytes.limit(); i += 1) {
+                    b.put(bytes.get(i), pos + i);
+                }
+            }
+            b.finish(size);
+        } catch (IOException excp) {
+            throw error("could not read message file");
+        }
+        return index;
+    }
+
+    /**
+     * Return the index of FILE, whose name is NAME: the one stored in
+     * the sidecar file NAME.idx if there is one and it is an index of
+     * FILE as it is now, and otherwise one built by scanning FILE.
+     */
+    static MessageIndex forFile(FileChannel file, String name) {
+        Path path = Paths.get(name);
+        MessageIndex index = read(Paths.get(name + SUFFIX), path);
+        return index != null ? index : build(file, path);
+    }
+
+    /**
+     * Return the index stored in the file named NAME by write(), if
+     * there is one and it is an index of FILE as it is now, and
+     * otherwise null.
+     */
+    static MessageIndex read(Path name, Path file) {
+        if (!Files.exists(name)) {
+            return null;
+        }
+        MessageIndex index = new MessageIndex();
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(Files.newInputStream(name)))) {
+            if (in.readInt() != MAGIC || in.readInt() != STRIDE) {
+                return null;
+            }
+            index._fileSize = in.readLong();
+            index._fileModified = in.readLong();
+            if (!index.describes(file)) {
+                return null;
+            }
+            int n = in.readInt();
+            for (int m = 0; m < n; m += 1) {
+                String setting = in.readBoolean() ? in.readUTF() : null;
+                long start = in.readLong(), count = in.readLong();
+                long[] marks = new long[in.readInt()];
+                for (int k = 0; k < marks.length; k += 1) {
+                    marks[k] = in.readLong();
+                }
+                index.add(setting, start, count, marks);
+            }
+        } catch (IOException excp) {
+            throw error("could not read index %s", name);
+        }
+        return index;
+    }
+
+    /**
+     * Store me in the file named NAME.
+     */
+    void write(Path name) {
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(name)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(STRIDE);
+            out.writeLong(_fileSize);
+            out.writeLong(_fileModified);
+            out.writeInt(size());
+            for (int m = 0; m < size(); m += 1) {
+                out.writeBoolean(_settings.get(m) != null);
+                if (_settings.get(m) != null) {
+                    out.writeUTF(_settings.get(m));
+                }
+                out.writeLong(_starts.get(m));
+                out.writeLong(_counts.get(m));
+                long[] marks = _marks.get(m);
+                out.writeInt(marks.length);
+                for (long mark : marks) {
+                    out.writeLong(mark);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write index %s", name);
+        }
+    }
+
+    /**
+     * Return true iff FILE has the size and modification time of the
+     * file I was built from.
+     */
+    boolean describes(Path file) {
+        try {
+            return Files.size(file) == _fileSize
+                && modified(file) == _fileModified;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * Record the current size and modification time of FILE as those of
+     * the file I index, after a change to FILE that moved no characters.
+     */
+    void restamp(Path file) {
+        try {
+            stamp(file);
+        } catch (IOException excp) {
+            throw error("could not read message file");
+        }
+    }
+
+    /**
+     * Record the size and modification time of FILE as those of the file
+     * I index.
+     */
+    private void stamp(Path file) throws IOException {
+        _fileSize = Files.size(file);
+        _fileModified = modified(file);
+    }
+
+    /**
+     * Return the modification time of FILE, in nanoseconds.
+     */
+    private static long modified(Path file) throws IOException {
+        return Files.getLastModifiedTime(file).to(TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Return the number of messages I index.
+     */
+    int size() {
+        return _settings.size();
+    }
+
+    /**
+     * Return the setting line of message M, or null if it has none.
+     */
+    String setting(int m) {
+        return _settings.get(m);
+    }
+
+    /**
+     * Return the number of characters in message M.
+     */
+    long charCount(int m) {
+        return _counts.get(m);
+    }
+
+    /**
+     * Return the byte offset in FILE of character POS of message M, where
+     * 0 <= POS < charCount(M).
+     */
+    long locate(FileChannel file, int m, long pos) {
+        if (pos < 0 || pos >= charCount(m)) {
+            throw error("position %d outside message %d", pos, m);
+        }
+        long offset = _marks.get(m)[(int) (pos / STRIDE)];
+        long skip = pos % STRIDE;
+        ByteBuffer buf = ByteBuffer.allocate(READ_SIZE);
+        try {
+            while (true) {
+                buf.clear();
+                if (file.read(buf, offset) < 0) {
+                    throw error("message file is shorter than its index");
+                }
+                buf.flip();
+                for (int i = 0; i < buf.limit(); i += 1) {
+                    if (!isBlank(buf.get(i))) {
+                        if (skip == 0) {
+                            return offset + i;
+                        }
+                        skip -= 1;
+                    }
+                }
+                offset += buf.limit();
+            }
+        } catch (IOException excp) {
+            throw error("could not read message file");
+        }
+    }
+
+    /**
+     * Return true iff B separates characters rather than being one.
+     */
+    static boolean isBlank(byte b) {
+        return b == ' ' || b == '\n' || b == '\r';
+    }
+
+    /**
+     * Record a message whose setting line is SETTING, whose text begins
+     * at byte START, and which has COUNT characters, the STRIDE * K-th
+     * of which is at byte MARKS[K].
+     */
+    private void add(String setting, long start, long count, long[] marks) {
+        _settings.add(setting);
+        _starts.add(start);
+        _counts.add(count);
+        _marks.add(marks);
+    }
+
+    /**
+     * Collects the messages of a file as it is scanned a byte at a time.
+     */
+    private class Builder {
+
+        /**
+         * Process byte B, at OFFSET in the file.
+         */
+        void put(byte b, long offset) {
+            if (b == '\n' || b == '\r') {
+                if (_inSetting) {
+                    endMessage();
+                    _setting = new String(_line, 0, _lineLen,
+                                          StandardCharsets.US_ASCII);
+                    _start = offset + 1;
+                    _inSetting = false;
+                }
+                _lineStart = true;
+                return;
+            }
+            if (_lineStart && b == '*') {
+                _inSetting = true;
+                _lineLen = 0;
+            }
+            _lineStart = false;
+            if (_inSetting) {
+                if (_lineLen == _line.length) {
+                    _line = Arrays.copyOf(_line, 2 * _line.length);
+                }
+                _line[_lineLen] = b;
+                _lineLen += 1;
+            } else if (!isBlank(b)) {
+                if (_count % STRIDE == 0) {
+                    if (_noffsets == _offsets.length) {
+                        _offsets = Arrays.copyOf(_offsets,
+                                                 2 * _offsets.length);
+                    }
+                    _offsets[_noffsets] = offset;
+                    _noffsets += 1;
+                }
+                _count += 1;
+            }
+        }
+
+        /**
+         * Finish scanning a file of SIZE bytes.
+         */
+        void finish(long size) {
+            if (_inSetting) {
+                endMessage();
+                _setting = new String(_line, 0, _lineLen,
+                                      StandardCharsets.US_ASCII);
+                _start = size;
+            }
+            endMessage();
+        }
+
+        /**
+         * Record the message in progress, if any.
+         */
+        private void endMessage() {
+            if (_setting != null || _count > 0) {
+                add(_setting, _start, _count,
+                    Arrays.copyOf(_offsets, _noffsets));
+            }
+            _count = 0;
+            _noffsets = 0;
+        }
+
+        /**
+         * True iff the next byte begins a line.
+         */
+        private boolean _lineStart = true;
+
+        /**
+         * True iff the current line is a setting line.
+         */
+        private boolean _inSetting;
+
+        /**
+         * The setting line being read.
+         */
+        private byte[] _line = new byte[INITIAL];
+
+        /**
+         * Number of bytes in _line.
+         */
+        private int _lineLen;
+
+        /**
+         * Setting line of the message in progress, or null.
+         */
+        private String _setting;
+
+        /**
+         * Byte offset of the text of the message in progress.
+         */
+        private long _start;
+
+        /**
+         * Number of characters in the message in progress.
+         */
+        private long _count;
+
+        /**
+         * Offsets of every STRIDE-th character of the message in progress.
+         */
+        private long[] _offsets = new long[INITIAL];
+
+        /**
+         * Number of entries in _offsets.
+         */
+        private int _noffsets;
+    }
+
+    /**
+     * Appended to a file name to get the name of its sidecar index.
+     */
+    static final String SUFFIX = ".idx";
+
+    /**
+     * Identifies an index file in the current format, which records the
+     * size and modification time of its message file.
+     */
+    private static final int MAGIC = 0x456e4979;
+
+    /**
+     * Largest window of a message file mapped at once.
+     */
+    private static final long WINDOW = 1L << 30;
+
+    /**
+     * Bytes read at a time by locate().
+     */
+    private static final int READ_SIZE = 1 << 12;
+
+    /**
+     * Initial size of growable arrays.
+     */
+    private static final int INITIAL = 64;
+
+    /**
+     * Size in bytes of the file I index, when I was built.
+     */
+    private long _fileSize;
+
+    /**
+     * Modification time of the file I index, in nanoseconds, when I was
+     * built.
+     */
+    private long _fileModified;
+
+    /**
+     * Setting line of each message, or null.
+     */
+    private final ArrayList<String> _settings = new ArrayList<>();
+
+    /**
+     * Byte offset of the text of each message.
+     */
+    private final ArrayList<Long> _starts = new ArrayList<>();
+
+    /**
+     * Number of characters in each message.
+     */
+    private final ArrayList<Long> _counts = new ArrayList<>();
+
+    /**
+     * Offsets of every STRIDE-th character of each message.
+     */
+    private final ArrayList<long[]> _marks = new ArrayList<>();
+
+}
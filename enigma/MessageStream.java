@@ -0,0 +1,317 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * Converts an input stream of setting lines and message lines a
+ * character at a time, in constant memory.  Message output is grouped
+ * in fives, one output line per input line, exactly as by
+ * Main.printMessageLine.  Only setting lines are held whole.
+ *
+ * @author Yuanshan Chen
+ */
+class MessageStream {
+
+    /**
+     * A stream of messages in ALPHABET whose results go to OUT.  Each
+     * setting line is passed to SETTINGS, which returns the machine for
+     * the messages that follow it.
+     */
+    MessageStream(Alphabet alphabet, Function<String, Machine> settings,
+                  Writer out) {
+        this(alphabet, settings, out, EnigmaMetrics.get());
+    }
+
+    /**
+     * A stream of messages as above that records them in METRICS, or
+     * nowhere if METRICS is null.
+     */
+    MessageStream(Alphabet alphabet, Function<String, Machine> settings,
+                  Writer out, EnigmaMetrics metrics) {
+        _alphabet = alphabet;
+        _settings = settings;
+        _out = out;
+        _metrics = metrics;
+    }
+
+    /**
+     * Process the LEN characters of BUF starting at OFF.
+     */
+    void accept(char[] buf, int off, int len) {
+        for (int i = off; i < off + len; i += 1) {
+            put(buf[i]);
+        }
+    }
+
+    /**
+     * Process the remaining bytes of BYTES, each of which is taken as an
+     * ASCII character.
+     */
+    void accept(ByteBuffer bytes) {
+        int lim = bytes.limit();
+        for (int i = bytes.position(); i < lim; i += 1) {
+            put((char) (bytes.get(i) & 0xff));
+        }
+        bytes.position(lim);
+    }
+
+    /**
+     * Finish the last line, if unterminated, and flush all output.
+     * Reports an error if there was no setting line.
+     */
+    void finish() {
+        if (_lineKind == SETTING_LINE) {
+            endSetting();
+        } else if (_lineKind == MESSAGE_LINE && _group > 0) {
+            newline();
+        }
+        flush();
+        endMessage();
+        if (_machine == null) {
+            throw new EnigmaException(_lineNum == 0
+                                      ? "Wrong configuration format"
+                                      : "No setting line");
+        }
+    }
+
+    /**
+     * Write any buffered output.
+     */
+    void flush() {
+        try {
+            _out.write(_outBuf, 0, _outLen);
+            _out.flush();
+            _outLen = 0;
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+    }
+
+    /**
+     * Process the next input character C.
+     */
+    private void put(char c) {
+        if (_afterCR && c == '\n') {
+            _afterCR = false;
+            return;
+        }
+        _afterCR = c == '\r';
+        if (_outLen + NEWLINE.length() + 1 >= _outBuf.length) {
+            flush();
+        }
+        if (isLineEnd(c)) {
+            endLine();
+            return;
+        }
+        if (_lineKind == LINE_START) {
+            if (c == '*') {
+                _lineKind = SETTING_LINE;
+            } else if (_machine == null) {
+                throw new EnigmaException("No setting line");
+            } else {
+                _lineKind = MESSAGE_LINE;
+            }
+        }
+        if (_lineKind == SETTING_LINE) {
+            if (_setting.length() >= SETTING_LIMIT) {
+                throw error("setting line too long");
+            }
+            _setting.append(c);
+        } else if (c != ' ') {
+            int index = _alphabet.toInt(c);
+            if (index < 0) {
+                throw new EnigmaException("Wrong format of input words");
+            }
+            if (_group == GROUP) {
+                _outBuf[_outLen] = ' ';
+                _outLen += 1;
+                _group = 0;
+            }
+            _outBuf[_outLen] = _alphabet.toChar(_machine.convert(index));
+            _outLen += 1;
+            _group += 1;
+            _converted += 1;
+        }
+    }
+
+    /**
+     * Handle the end of an input line.  A blank line before the first
+     * setting line is allowed only as the first line of input.
+     */
+    private void endLine() {
+        if (_lineKind == SETTING_LINE) {
+            endSetting();
+        } else if (_lineKind == MESSAGE_LINE && _group > 0) {
+            newline();
+        } else if (_lineKind == LINE_START && _machine != null) {
+            newline();
+        } else if (_lineKind == LINE_START && _lineNum > 0) {
+            throw new EnigmaException("No setting line");
+        }
+        _lineKind = LINE_START;
+        _lineNum += 1;
+        _group = 0;
+    }
+
+    /**
+     * Apply the setting line just read.
+     */
+    private void endSetting() {
+        endMessage();
+        _machine = _settings.apply(_setting.toString());
+        _setting.setLength(0);
+        _event = new EnigmaEvents.MessageConverted();
+        _event.begin();
+    }
+
+    /**
+     * Record the end of the current message, if any, in the metrics and
+     * as an event.
+     */
+    private void endMessage() {
+        if (_machine != null) {
+            long size = _converted - _messageStart;
+            if (_metrics != null) {
+                _metrics.message(size);
+            }
+            if (_event.shouldCommit()) {
+                _event.rotors = _machine.rotorNames();
+                _event.alphabetSize = _alphabet.size();
+                _event.characters = size;
+                _event.commit();
+            }
+        }
+        _messageStart = _converted;
+    }
+
+    /**
+     * Return the number of characters I have converted.
+     */
+    long converted() {
+        return _converted;
+    }
+
+    /**
+     * Buffer a line separator.
+     */
+    private void newline() {
+        NEWLINE.getChars(0, NEWLINE.length(), _outBuf, _outLen);
+        _outLen += NEWLINE.length();
+    }
+
+    /**
+     * Return true iff C ends a line, as for Scanner.nextLine().
+     */
+    static boolean isLineEnd(char c) {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029'
+            || c == '\u0085';
+    }
+
+    /**
+     * Size of my output buffer.
+     */
+    static final int BUFFER_SIZE = 1 << 13;
+
+    /**
+     * Longest setting line I accept.
+     */
+    static final int SETTING_LIMIT = 1 << 16;
+
+    /**
+     * Number of characters in an output group.
+     */
+    private static final int GROUP = 5;
+
+    /**
+     * The line separator written after each output line.
+     */
+    private static final String NEWLINE = System.lineSeparator();
+
+    /**
+     * Kinds of input line: nothing read yet, a setting line, and a
+     * message line.
+     */
+    private static final int LINE_START = 0, SETTING_LINE = 1,
+        MESSAGE_LINE = 2;
+
+    /**
+     * Alphabet of my messages.
+     */
+    private final Alphabet _alphabet;
+
+    /**
+     * Applies setting lines.
+     */
+    private final Function<String, Machine> _settings;
+
+    /**
+     * Destination of my output.
+     */
+    private final Writer _out;
+
+    /**
+     * Output not yet written to _out.
+     */
+    private final char[] _outBuf = new char[BUFFER_SIZE];
+
+    /**
+     * Number of characters in _outBuf.
+     */
+    private int _outLen;
+
+    /**
+     * The setting line being read.
+     */
+    private final StringBuilder _setting = new StringBuilder();
+
+    /**
+     * The machine set by the last setting line, or null before the first.
+     */
+    private Machine _machine;
+
+    /**
+     * The kind of the current input line.
+     */
+    private int _lineKind = LINE_START;
+
+    /**
+     * Number of complete input lines read.
+     */
+    private long _lineNum;
+
+    /**
+     * Number of characters in the current output group.
+     */
+    private int _group;
+
+    /**
+     * True iff the last character was a carriage return.
+     */
+    private boolean _afterCR;
+
+    /**
+     * Number of characters converted.
+     */
+    private long _converted;
+
+    /**
+     * Value of _converted when the current message began.
+     */
+    private long _messageStart;
+
+    /**
+     * The event for the current message.
+     */
+    private EnigmaEvents.MessageConverted _event;
+
+    /**
+     * Where I record messages, or null if metrics are off.
+     */
+    private final EnigmaMetrics _metrics;
+
+}
@@ -1,5 +1,7 @@
 package enigma;
 
+import static enigma.EnigmaException.*;
+
 /**
  * Class that represents a rotating rotor in the enigma machine.
  *
@@ -14,9 +16,38 @@ class MovingRotor extends Rotor {
      * alphabet).
      */
     MovingRotor(String name, Permutation perm, String notches) {
+        this(name, perm, notchSet(perm, notches));
+    }
+
+    /**
+     * A rotor named NAME whose permutation in its default setting is
+     * PERM, and which is at a notch at setting K iff bit K of NOTCHES,
+     * which I keep, is set.
+     */
+    MovingRotor(String name, Permutation perm, long[] notches) {
         super(name, perm);
+        int size = perm.size();
+        if (notches.length != (size + 63) >>> 6
+            || size % 64 != 0
+               && notches[notches.length - 1] >>> (size % 64) != 0) {
+            throw error("bad notches for rotor %s", name);
+        }
         _notches = notches;
         _permutation = perm;
+        _notchBits = notchBits(0);
+    }
+
+    /**
+     * Return the set of settings of a rotor with permutation PERM at
+     * which it is at one of the notches in NOTCHES.
+     */
+    private static long[] notchSet(Permutation perm, String notches) {
+        long[] bits = new long[(perm.size() + 63) >>> 6];
+        for (int i = 0; i < notches.length(); i = i + 1) {
+            int b = perm.wrap(perm.alphabet().toInt(notches.charAt(i)));
+            bits[b >>> 6] |= 1L << b;
+        }
+        return bits;
     }
 
     @Override
@@ -33,17 +64,35 @@ class MovingRotor extends Rotor {
      * Introduce its NOTCH situation.
      */
     boolean atNotch() {
+        int posn = setting();
+        return (_notchBits[posn >>> 6] & (1L << posn)) != 0;
+    }
 
-        for (int i = 0; i < _notches.length(); i = i + 1) {
-            char a = _notches.charAt(i);
-            int b = alphabet().toInt(a);
-            b = permutation().wrap(b - findringnum());
-            char c = alphabet().toChar(b);
-            if (c == _permutation.alphabet().toChar(setting())) {
-                return true;
+    @Override
+    long[] notchBits() {
+        return _notchBits;
+    }
+
+    @Override
+    /**
+     * Set my ring to A, moving my notches with it.
+     */
+    void setring(char a) {
+        super.setring(a);
+        _notchBits = notchBits(findringnum());
+    }
+
+    @Override
+    long[] notchBits(int ring) {
+        long[] bits = new long[_notches.length];
+        for (int w = 0; w < _notches.length; w += 1) {
+            for (long word = _notches[w]; word != 0; word &= word - 1) {
+                int b = (w << 6) + Long.numberOfTrailingZeros(word);
+                b = _permutation.wrap(b - ring);
+                bits[b >>> 6] |= 1L << b;
             }
         }
-        return false;
+        return bits;
     }
 
     @Override
@@ -58,9 +107,14 @@ class MovingRotor extends Rotor {
 
 
     /**
-     * Set this MovingRotor's notches.
+     * Bit P is set iff I am at a notch at setting P with my ring at 0.
+     */
+    private long[] _notches;
+
+    /**
+     * Bit P is set iff I am at a notch at setting P.
      */
-    private String _notches;
+    private long[] _notchBits;
 
     /**
      * Set this rotor's permutation.
@@ -80,4 +80,20 @@ public class MovingRotorTest {
         checkRotor("Rotor I set", UPPER_STRING, NAVALZ_MAP.get("I"));
     }
 
+    @Test
+    public void checkLargeAlphabetRotor() {
+        StringBuilder chars = new StringBuilder();
+        for (int k = 0; k < Permutation.TABLE_LIMIT + 44; k += 1) {
+            chars.append((char) ('\u0100' + k));
+        }
+        Alphabet big = new Alphabet(chars.toString());
+        String cycle = "(" + chars.substring(0, 3) + ")";
+        rotor = new MovingRotor("Big", new Permutation(cycle, big), "");
+        assertEquals(1, rotor.convertForward(0));
+        assertEquals(0, rotor.convertBackward(1));
+        rotor.set(big.size() - 1);
+        assertEquals(2, rotor.convertForward(1));
+        assertEquals(1, rotor.convertBackward(2));
+    }
+
 }
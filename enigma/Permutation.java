@@ -1,5 +1,8 @@
 package enigma;
 
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
 
 /**
  * Represents a permutation of a range of integers starting at 0 corresponding
@@ -18,15 +21,119 @@ class Permutation {
      */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        _cycles = cycles;
+        int n = alphabet.size();
+        _forward = new int[n];
+        _inverse = new int[n];
+        Arrays.fill(_forward, -1);
+        int i = 0;
+        while (i < cycles.length()) {
+            char c = cycles.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i += 1;
+            } else if (c == '(') {
+                int close = cycles.indexOf(')', i);
+                if (close < 0) {
+                    throw error("unterminated cycle in %s", cycles);
+                }
+                addCycle(cycles.substring(i + 1, close), cycles);
+                i = close + 1;
+            } else {
+                throw error("bad character '%c' in cycles %s", c, cycles);
+            }
+        }
+        _derangement = true;
+        for (int k = 0; k < n; k += 1) {
+            if (_forward[k] < 0) {
+                _forward[k] = _inverse[k] = k;
+            }
+            if (_forward[k] == k) {
+                _derangement = false;
+            }
+        }
+    }
+
+    /**
+     * Set this Permutation to the one taking each index K of ALPHABET to
+     * FORWARD[K], which I keep.  FORWARD must be a permutation of
+     * 0 .. ALPHABET.size() - 1.
+     */
+    Permutation(int[] forward, Alphabet alphabet) {
+        _alphabet = alphabet;
+        int n = alphabet.size();
+        if (forward.length != n) {
+            throw error("permutation of %d characters for alphabet of %d",
+                        forward.length, n);
+        }
+        _forward = forward;
+        _inverse = new int[n];
+        Arrays.fill(_inverse, -1);
+        _derangement = true;
+        for (int k = 0; k < n; k += 1) {
+            int next = forward[k];
+            if (next < 0 || next >= n || _inverse[next] != -1) {
+                throw error("not a permutation");
+            }
+            _inverse[next] = k;
+            if (next == k) {
+                _derangement = false;
+            }
+        }
+    }
+
+    /**
+     * Set this Permutation to the one taking each index K of ALPHABET to
+     * FORWARD[K], whose inverse is INVERSE.  I keep both tables, after
+     * checking that they are inverses of each other.
+     */
+    Permutation(int[] forward, int[] inverse, Alphabet alphabet) {
+        _alphabet = alphabet;
+        int n = alphabet.size();
+        if (forward.length != n || inverse.length != n) {
+            throw error("permutation of %d characters for alphabet of %d",
+                        forward.length, n);
+        }
+        _forward = forward;
+        _inverse = inverse;
+        _derangement = true;
+        for (int k = 0; k < n; k += 1) {
+            int next = forward[k];
+            if (next < 0 || next >= n || inverse[next] != k) {
+                throw error("not a permutation");
+            }
+            if (next == k) {
+                _derangement = false;
+            }
+        }
     }
 
     /**
      * Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     * c0c1...cm.
+     * c0c1...cm and is part of CYCLES.
      */
-    private void addCycle(String cycle) {
-        _cycles = _cycles + cycle;
+    private void addCycle(String cycle, String cycles) {
+        int[] members = cycle.codePoints().toArray();
+        if (members.length == 0) {
+            throw error("empty cycle in %s", cycles);
+        }
+        for (int k = 0; k < members.length; k += 1) {
+            int index = _alphabet.toIndex(members[k]);
+            if (index < 0) {
+                throw error("character '%s' of cycle (%s) not in alphabet",
+                            new String(Character.toChars(members[k])), cycle);
+            }
+            if (_forward[index] != -1) {
+                throw error("character '%s' appears twice in cycles %s",
+                            new String(Character.toChars(members[k])),
+                            cycles);
+            }
+            _forward[index] = IN_CYCLE;
+            members[k] = index;
+        }
+        for (int k = 0; k < members.length; k += 1) {
+            int next = members[(k + 1) % members.length];
+            _forward[members[k]] = next;
+            _inverse[next] = members[k];
+        }
     }
 
     /**
@@ -44,7 +151,7 @@ class Permutation {
      * Returns the size of the alphabet I permute.
      */
     int size() {
-        return this._alphabet.size();
+        return _forward.length;
     }
 
     /**
@@ -52,10 +159,7 @@ class Permutation {
      * alphabet size.
      */
     int permute(int p) {
-        int mdl = this.wrap(p);
-        char bf = _alphabet.toChar(mdl);
-        char aft = this.permute(bf);
-        return _alphabet.toInt(aft);
+        return _forward[wrap(p)];
     }
 
     /**
@@ -63,10 +167,7 @@ class Permutation {
      * to  C modulo the alphabet size.
      */
     int invert(int c) {
-        int mdl = this.wrap(c);
-        char bf = _alphabet.toChar(mdl);
-        char aft = this.invert(bf);
-        return _alphabet.toInt(aft);
+        return _inverse[wrap(c)];
     }
 
     /**
@@ -74,45 +175,65 @@ class Permutation {
      * in ALPHABET, and converting the result to a character of ALPHABET.
      */
     char permute(char p) {
-        for (int i = 0; i < this._cycles.length(); i = i + 1) {
-            if (this._cycles.charAt(i) == p) {
-                int place = _cycles.indexOf(p);
-                if (_cycles.charAt(place + 1) == ')') {
-                    for (int x = place; x >= 0; x = x - 1) {
-                        if (_cycles.charAt(x) == '(') {
-                            return _cycles.charAt(x + 1);
-                        }
-                    }
-                } else {
-                    return _cycles.charAt(place + 1);
-                }
-            }
+        int index = _alphabet.toInt(p);
+        if (index < 0) {
+            return p;
         }
-        return p;
+        return _alphabet.toChar(_forward[index]);
     }
 
     /**
      * Return the result of applying the inverse of this permutation to C.
      */
-
     char invert(char c) {
-        for (int i = 0; i < this._cycles.length(); i = i + 1) {
-            if (this._cycles.charAt(i) == c) {
-                int place = _cycles.indexOf(_cycles.charAt(i));
-                if (_cycles.charAt(place - 1) == '(') {
-                    for (int x = place; x < _cycles.length(); x = x + 1) {
-                        if (_cycles.charAt(x) == ')') {
-                            char fin = _cycles.charAt(x - 1);
-                            return fin;
-                        }
-                    }
-                } else {
-                    int afp = place - 1;
-                    return _cycles.charAt(afp);
+        int index = _alphabet.toInt(c);
+        if (index < 0) {
+            return c;
+        }
+        return _alphabet.toChar(_inverse[index]);
+    }
+
+    /**
+     * Return the forward table of this permutation: entry K is the
+     * result of permuting K.  The caller must not modify it.
+     */
+    int[] forwardTable() {
+        return _forward;
+    }
+
+    /**
+     * Return the inverse table of this permutation: entry K is the
+     * result of inverting K.  The caller must not modify it.
+     */
+    int[] inverseTable() {
+        return _inverse;
+    }
+
+    /**
+     * Return the tables of this permutation as a rotor applies it at
+     * each setting: in element 0, entry S * size() + P is the result of
+     * advancing P by S, permuting, and going back by S; element 1 is the
+     * same for the inverse.  Returns null if size() > TABLE_LIMIT.  The
+     * tables are built on first use and shared by every rotor with this
+     * permutation, so rotors pooled by WiringPool share them too.  The
+     * caller must not modify them.
+     */
+    synchronized int[][] settingTables() {
+        int n = size();
+        if (_settingTables == null && n <= TABLE_LIMIT) {
+            int[] forward = new int[n * n];
+            int[] backward = new int[n * n];
+            for (int s = 0; s < n; s += 1) {
+                for (int p = 0; p < n; p += 1) {
+                    int in = p + s < n ? p + s : p + s - n;
+                    int f = _forward[in] - s, b = _inverse[in] - s;
+                    forward[s * n + p] = f < 0 ? f + n : f;
+                    backward[s * n + p] = b < 0 ? b + n : b;
                 }
             }
+            _settingTables = new int[][] { forward, backward };
         }
-        return c;
+        return _settingTables;
     }
 
     /**
@@ -127,22 +248,42 @@ class Permutation {
      * permutation for which no value maps to itself).
      */
     boolean derangement() {
-        for (int i = 0; i < this._cycles.length() - 2; i = i + 1) {
-            if (this._cycles.charAt(i) == '(' && _cycles.charAt(i + 2) == ')') {
-                return false;
-            }
-        }
-        return true;
+        return _derangement;
     }
 
+    /**
+     * Largest alphabet for which I keep settingTables().
+     */
+    static final int TABLE_LIMIT = 256;
+
+    /**
+     * Marks a _forward entry claimed by the cycle being added.
+     */
+    private static final int IN_CYCLE = -2;
+
     /**
      * Alphabet of this permutation.
      */
     private Alphabet _alphabet;
 
     /**
-     * The _cycles of this permutation.
+     * The index each index is mapped to by this permutation.
+     */
+    private int[] _forward;
+
+    /**
+     * The index each index is mapped to by the inverse permutation.
+     */
+    private int[] _inverse;
+
+    /**
+     * The value of settingTables(), or null until first built.
+     */
+    private int[][] _settingTables;
+
+    /**
+     * True iff no index maps to itself.
      */
-    private String _cycles;
+    private boolean _derangement;
 
 }
@@ -76,4 +76,12 @@ public class PermutationTest {
         assertEquals('Q', _perm.permute('Q'));
     }
 
+    @Test
+    public void testderangement() {
+        perm = new Permutation(NAVALA.get("B"), UPPER);
+        assertTrue(perm.derangement());
+        perm = new Permutation("(AB) (CD)", UPPER);
+        assertFalse(perm.derangement());
+    }
+
 }
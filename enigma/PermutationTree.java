@@ -0,0 +1,92 @@
+package enigma;
+
+/**
+ * A balanced binary tree of permutations of the indices 0 .. N-1, whose
+ * root is their composition: leaf #0 applied last, as a character
+ * passes from the rightmost rotor leftward.  Changing a leaf updates
+ * only the nodes above it, so the composition of L leaves is kept up
+ * to date in O(N log L) time per changed leaf, and applied, or its
+ * inverse applied, in constant time.
+ *
+ * @author Yuanshan Chen
+ */
+class PermutationTree {
+
+    /**
+     * A tree of LEAVES permutations of the indices 0 .. N-1, all of
+     * them initially the identity.
+     */
+    PermutationTree(int leaves, int n) {
+        int size = 1;
+        while (size < leaves) {
+            size *= 2;
+        }
+        _size = size;
+        _forward = new int[2 * size][n];
+        _inverse = new int[2 * size][n];
+        for (int node = 1; node < 2 * size; node += 1) {
+            for (int c = 0; c < n; c += 1) {
+                _forward[node][c] = _inverse[node][c] = c;
+            }
+        }
+    }
+
+    /**
+     * Make leaf #K the permutation taking each index C to the result of
+     * ROTOR converting C forward at position POSN, and update the nodes
+     * above it.
+     */
+    void set(int k, Rotor rotor, int posn) {
+        int node = _size + k;
+        int[] forward = _forward[node], inverse = _inverse[node];
+        for (int c = 0; c < forward.length; c += 1) {
+            int t = rotor.convertForward(c, posn);
+            forward[c] = t;
+            inverse[t] = c;
+        }
+        for (node /= 2; node > 0; node /= 2) {
+            int[] left = _forward[2 * node], right = _forward[2 * node + 1];
+            int[] leftInverse = _inverse[2 * node];
+            int[] rightInverse = _inverse[2 * node + 1];
+            forward = _forward[node];
+            inverse = _inverse[node];
+            for (int c = 0; c < forward.length; c += 1) {
+                forward[c] = left[right[c]];
+                inverse[c] = rightInverse[leftInverse[c]];
+            }
+        }
+    }
+
+    /**
+     * Return the result of applying my leaves to C, from the last to
+     * leaf #0.
+     */
+    int forward(int c) {
+        return _forward[1][c];
+    }
+
+    /**
+     * Return the index that forward takes to C.
+     */
+    int inverse(int c) {
+        return _inverse[1][c];
+    }
+
+    /**
+     * Number of leaves, including those that are always the identity:
+     * a power of 2.
+     */
+    private final int _size;
+
+    /**
+     * The permutation of each node, as a table, by node: #1 is the root,
+     * and the children of node #K are #2K and #2K+1.
+     */
+    private final int[][] _forward;
+
+    /**
+     * The inverse of the permutation of each node, by node.
+     */
+    private final int[][] _inverse;
+
+}
@@ -0,0 +1,206 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * Replaces a range of characters of one message in an encoded file, in
+ * the input format of Main, with the encoding of new text of the same
+ * length.  The machine is moved straight to the start of the range with
+ * Machine.seek, only the replacement is encoded, and only the bytes of
+ * the range are rewritten, so the cost does not depend on the size of
+ * the file.  Blanks and line breaks in the file are left where they
+ * are, so the file's MessageIndex remains valid; a sidecar index is
+ * rewritten to record the file's new modification time.  The patcher
+ * refuses to write if the file has changed since it was indexed.
+ *
+ * @author Yuanshan Chen
+ */
+class RangePatcher {
+
+    /**
+     * Patch the file ARGS[1] using the configuration in ARGS[0].  ARGS[2]
+     * is either a message number (from 0), or a setting line to apply to
+     * message 0.  The characters of that message starting at number
+     * ARGS[3] are replaced by the encoding of ARGS[4], whose blanks are
+     * ignored.
+     */
+    public static void main(String... args) {
+        try {
+            if (args.length != 5) {
+                throw error("Usage: RangePatcher CONFIG FILE "
+                            + "(MESSAGE | SETTING) FROM TEXT");
+            }
+            RangePatcher patcher = new RangePatcher(args[0], args[1]);
+            long from;
+            try {
+                from = Long.parseLong(args[3]);
+            } catch (NumberFormatException excp) {
+                throw error("bad number: %s", args[3]);
+            }
+            if (args[2].startsWith("*")) {
+                patcher.patch(args[2], from, args[4]);
+            } else {
+                try {
+                    patcher.patch(Integer.parseInt(args[2]), from, args[4]);
+                } catch (NumberFormatException excp) {
+                    throw error("bad message number: %s", args[2]);
+                }
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * A patcher of the messages in the file named FILENAME, using the
+     * configuration file named CONFIGNAME.
+     */
+    RangePatcher(String configName, String fileName) {
+        _main = new Main(new String[] { configName });
+        _path = Paths.get(fileName);
+        _indexName = Paths.get(fileName + MessageIndex.SUFFIX);
+        try {
+            _file = FileChannel.open(_path,
+                                     StandardOpenOption.READ,
+                                     StandardOpenOption.WRITE);
+        } catch (IOException excp) {
+            throw error("could not open %s", fileName);
+        }
+        _index = MessageIndex.forFile(_file, fileName);
+    }
+
+    /**
+     * Replace the characters of message number MESSAGE, which must have
+     * a setting line, starting at character FROM with the encoding of
+     * TEXT.
+     */
+    void patch(int message, long from, String text) {
+        if (message < 0 || message >= _index.size()) {
+            throw error("no message %d", message);
+        }
+        if (_index.setting(message) == null) {
+            throw error("message %d has no setting line", message);
+        }
+        patch(_index.setting(message), message, from, text);
+    }
+
+    /**
+     * Replace the characters of the first message starting at character
+     * FROM with the encoding of TEXT under setting line SETTING.
+     */
+    void patch(String setting, long from, String text) {
+        if (_index.size() == 0) {
+            throw error("no messages");
+        }
+        patch(setting, 0, from, text);
+    }
+
+    /**
+     * Replace the characters of message number MESSAGE starting at
+     * character FROM with the encoding of TEXT under setting line
+     * SETTING.
+     */
+    private void patch(String setting, int message, long from,
+                       String text) {
+        Machine machine = _main.configure(setting);
+        Alphabet alphabet = machine.alphabet();
+        char[] code = text.toCharArray();
+        long to = from + code.length;
+        for (char c : code) {
+            if (c == ' ') {
+                to -= 1;
+            } else if (!alphabet.contains(c) || c > MAX_ASCII) {
+                throw new EnigmaException("Wrong format of input words");
+            }
+        }
+        if (from < 0 || to > _index.charCount(message)) {
+            throw error("range %d-%d outside message %d", from, to, message);
+        }
+        if (from == to) {
+            return;
+        }
+        if (!_index.describes(_path)) {
+            throw error("%s has changed since it was indexed", _path);
+        }
+        machine.seek(from);
+        int n = machine.convert(code, 0, code.length, code, 0);
+        long offset = _index.locate(_file, message, from);
+        ByteBuffer buf = ByteBuffer.allocate(READ_SIZE);
+        try {
+            int k = 0;
+            while (k < n) {
+                buf.clear();
+                if (_file.read(buf, offset) < 0) {
+                    throw error("message file is shorter than its index");
+                }
+                buf.flip();
+                int read = buf.limit(), end = 0;
+                for (int i = 0; i < buf.limit() && k < n; i += 1) {
+                    if (!MessageIndex.isBlank(buf.get(i))) {
+                        buf.put(i, (byte) code[k]);
+                        k += 1;
+                        end = i + 1;
+                    }
+                }
+                buf.limit(end);
+                while (buf.hasRemaining()) {
+                    _file.write(buf, offset + buf.position());
+                }
+                offset += read;
+            }
+            _file.force(false);
+        } catch (IOException excp) {
+            throw error("could not write message file");
+        }
+        _index.restamp(_path);
+        if (Files.exists(_indexName)) {
+            _index.write(_indexName);
+        }
+    }
+
+    /**
+     * Largest ASCII character.
+     */
+    private static final char MAX_ASCII = 0x7f;
+
+    /**
+     * Bytes read at a time.
+     */
+    private static final int READ_SIZE = 1 << 12;
+
+    /**
+     * Source of my configuration.
+     */
+    private final Main _main;
+
+    /**
+     * The path of the file of messages.
+     */
+    private final Path _path;
+
+    /**
+     * The path of its sidecar index.
+     */
+    private final Path _indexName;
+
+    /**
+     * The file of messages.
+     */
+    private final FileChannel _file;
+
+    /**
+     * Index of _file.
+     */
+    private final MessageIndex _index;
+
+}
@@ -0,0 +1,208 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * Decodes a range of characters of one message in a file in the input
+ * format of Main, without converting the characters before it.  The
+ * machine is moved straight to the start of the range with
+ * Machine.seek, and the range is found through a MessageIndex of the
+ * file, read from the sidecar file NAME.idx if there is one that is
+ * still current, and otherwise built by scanning the file.
+ *
+ * @author Yuanshan Chen
+ */
+class RangeReader {
+
+    /**
+     * Decode ranges of the messages in ARGS[1] with the configuration
+     * in ARGS[0].  ARGS[2] is either a message number (from 0), or a
+     * setting line to apply to message 0.  The characters numbered
+     * ARGS[3] (inclusive) to ARGS[4] (exclusive) of that message are
+     * printed on the standard output.  Alternatively, "--index FILE"
+     * writes the sidecar index for FILE.
+     */
+    public static void main(String... args) {
+        try {
+            if (args.length == 2 && args[0].equals("--index")) {
+                writeIndex(args[1]);
+                return;
+            }
+            if (args.length != 5) {
+                throw error("Usage: RangeReader CONFIG FILE "
+                            + "(MESSAGE | SETTING) FROM TO");
+            }
+            RangeReader reader = new RangeReader(args[0], args[1]);
+            long from = parseLong(args[3]), to = parseLong(args[4]);
+            if (args[2].startsWith("*")) {
+                System.out.println(reader.read(args[2], from, to));
+            } else {
+                System.out.println(reader.read((int) parseLong(args[2]),
+                                               from, to));
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /**
+     * A reader of the messages in the file named FILENAME, using the
+     * configuration file named CONFIGNAME.
+     */
+    RangeReader(String configName, String fileName) {
+        _main = new Main(new String[] { configName });
+        _file = open(fileName);
+        _index = MessageIndex.forFile(_file, fileName);
+    }
+
+    /**
+     * Return the decoding of characters FROM (inclusive) to TO
+     * (exclusive) of message number MESSAGE, which must have a setting
+     * line.
+     */
+    String read(int message, long from, long to) {
+        if (message < 0 || message >= _index.size()) {
+            throw error("no message %d", message);
+        }
+        if (_index.setting(message) == null) {
+            throw error("message %d has no setting line", message);
+        }
+        return read(_index.setting(message), message, from, to);
+    }
+
+    /**
+     * Return the decoding of characters FROM (inclusive) to TO
+     * (exclusive) of the first message, using setting line SETTING.
+     */
+    String read(String setting, long from, long to) {
+        if (_index.size() == 0) {
+            throw error("no messages");
+        }
+        return read(setting, 0, from, to);
+    }
+
+    /**
+     * Return the index of my file.
+     */
+    MessageIndex index() {
+        return _index;
+    }
+
+    /**
+     * Return the decoding of characters FROM (inclusive) to TO
+     * (exclusive) of message number MESSAGE, using setting line SETTING.
+     */
+    private String read(String setting, int message, long from, long to) {
+        if (from < 0 || to < from) {
+            throw error("range %d-%d outside message %d", from, to, message);
+        }
+        if (to - from > MAX_RANGE) {
+            throw error("range %d-%d longer than %d characters", from, to,
+                        MAX_RANGE);
+        }
+        if (to > _index.charCount(message)) {
+            throw error("range %d-%d outside message %d", from, to, message);
+        }
+        StringBuilder result = new StringBuilder((int) (to - from));
+        if (from == to) {
+            return result.toString();
+        }
+        Machine machine = _main.configure(setting);
+        Alphabet alphabet = machine.alphabet();
+        machine.seek(from);
+        long offset = _index.locate(_file, message, from);
+        ByteBuffer buf = ByteBuffer.allocate(READ_SIZE);
+        try {
+            while (result.length() < to - from) {
+                buf.clear();
+                if (_file.read(buf, offset) < 0) {
+                    throw error("message file is shorter than its index");
+                }
+                buf.flip();
+                for (int i = 0; i < buf.limit()
+                         && result.length() < to - from; i += 1) {
+                    byte b = buf.get(i);
+                    if (MessageIndex.isBlank(b)) {
+                        continue;
+                    }
+                    int index = alphabet.toInt((char) (b & 0xff));
+                    if (index < 0) {
+                        throw new EnigmaException(
+                            "Wrong format of input words");
+                    }
+                    result.append(alphabet.toChar(machine.convert(index)));
+                }
+                offset += buf.limit();
+            }
+        } catch (IOException excp) {
+            throw error("could not read message file");
+        }
+        return result.toString();
+    }
+
+    /**
+     * Write the sidecar index of the file named NAME.
+     */
+    static void writeIndex(String name) {
+        FileChannel file = open(name);
+        Path indexName = Paths.get(name + MessageIndex.SUFFIX);
+        MessageIndex.build(file, Paths.get(name)).write(indexName);
+    }
+
+    /**
+     * Return a read-only channel on the file named NAME.
+     */
+    private static FileChannel open(String name) {
+        try {
+            return FileChannel.open(Paths.get(name), StandardOpenOption.READ);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /**
+     * Return the value of the numeral S.
+     */
+    private static long parseLong(String s) {
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException excp) {
+            throw error("bad number: %s", s);
+        }
+    }
+
+    /**
+     * Bytes read at a time.
+     */
+    private static final int READ_SIZE = 1 << 12;
+
+    /**
+     * Longest range read() returns, as it returns a String.
+     */
+    static final int MAX_RANGE = Integer.MAX_VALUE - 8;
+
+    /**
+     * Source of my configuration.
+     */
+    private final Main _main;
+
+    /**
+     * The file of messages.
+     */
+    private final FileChannel _file;
+
+    /**
+     * Index of _file.
+     */
+    private final MessageIndex _index;
+
+}
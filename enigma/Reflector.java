@@ -29,7 +29,7 @@ class Reflector extends FixedRotor {
     /**
      * A reflector would never converbackward.
      */
-    int convertBackward(int e) {
+    int convertBackward(int e, int setting) {
         throw error("Reflector never convertBackward");
     }
 
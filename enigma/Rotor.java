@@ -14,6 +14,7 @@ class Rotor {
     Rotor(String name, Permutation perm) {
         _name = name;
         _permutation = perm;
+        _tabled = perm.size() <= Permutation.TABLE_LIMIT;
     }
 
     /**
@@ -85,9 +86,20 @@ class Rotor {
      * according to my permutation.
      */
     int convertForward(int p) {
-        int mdl = _permutation.wrap(p + _setting);
+        return convertForward(p, _setting);
+    }
+
+    /**
+     * Return the conversion of P (an integer in the range 0..size()-1)
+     * according to my permutation, as if my setting were SETTING.
+     */
+    int convertForward(int p, int setting) {
+        if (tabled()) {
+            return _forwardTable[setting * size() + p];
+        }
+        int mdl = _permutation.wrap(p + setting);
         int bf = _permutation.permute(mdl);
-        return _permutation.wrap(bf - _setting);
+        return _permutation.wrap(bf - setting);
     }
 
     /**
@@ -95,9 +107,47 @@ class Rotor {
      * according to the inverse of my permutation.
      */
     int convertBackward(int e) {
-        int mdla = _permutation.wrap(e + _setting);
+        return convertBackward(e, _setting);
+    }
+
+    /**
+     * Return the conversion of E (an integer in the range 0..size()-1)
+     * according to the inverse of my permutation, as if my setting
+     * were SETTING.
+     */
+    int convertBackward(int e, int setting) {
+        if (tabled()) {
+            return _backwardTable[setting * size() + e];
+        }
+        int mdla = _permutation.wrap(e + setting);
         int bfa = _permutation.invert(mdla);
-        return _permutation.wrap(bfa - _setting);
+        return _permutation.wrap(bfa - setting);
+    }
+
+    /**
+     * Build any tables my conversions use now, rather than on first use.
+     */
+    void compile() {
+        tabled();
+    }
+
+    /**
+     * Return true iff my conversions are served from the per-setting
+     * tables of my permutation (see Permutation.settingTables), fetching
+     * them on first use.  Alphabets larger than
+     * Permutation.TABLE_LIMIT use modular arithmetic instead, without
+     * touching the tables.
+     */
+    private boolean tabled() {
+        if (!_tabled) {
+            return false;
+        }
+        if (_forwardTable == null) {
+            int[][] tables = _permutation.settingTables();
+            _backwardTable = tables[1];
+            _forwardTable = tables[0];
+        }
+        return true;
     }
 
     /**
@@ -118,6 +168,23 @@ class Rotor {
         this.set(_permutation.wrap(this.setting() - now));
     }
 
+    /**
+     * Return the set of settings at which atNotch() is true, as a bit
+     * set of size() bits, or null if I have no notches.
+     */
+    long[] notchBits() {
+        return notchBits(ringn);
+    }
+
+    /**
+     * Return the set of settings at which I would be at a notch with my
+     * ring at RING, as a new bit set of size() bits, or null if I have
+     * no notches.
+     */
+    long[] notchBits(int ring) {
+        return null;
+    }
+
     /**
      * Advance me one position, if possible. By default, does nothing.
      */
@@ -152,6 +219,25 @@ class Rotor {
      */
     private int _setting;
 
+    /**
+     * True iff my alphabet is small enough for per-setting tables.
+     */
+    private final boolean _tabled;
+
+    /**
+     * Result of convertForward(P) at setting S, at index S * size() + P;
+     * null until first fetched.  Shared with every rotor with my
+     * permutation.  Set after _backwardTable, so that rotors may be
+     * shared between threads.
+     */
+    private volatile int[] _forwardTable;
+
+    /**
+     * Result of convertBackward(E) at setting S, at index S * size() + E;
+     * null until first fetched.
+     */
+    private volatile int[] _backwardTable;
+
     /**
      * The alphabet applied by this rotor.
      */
@@ -0,0 +1,175 @@
+package enigma;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * The rotors available to a machine, indexed by name.  A catalog knows
+ * the name and kind of each of its rotors from the start, but builds a
+ * rotor only when it is first asked for, so that a library of many
+ * rotors costs little more than the rotors actually used.  Any number
+ * of threads may share a catalog.
+ *
+ * @author Yuanshan Chen
+ */
+class RotorCatalog {
+
+    /**
+     * Builds the rotors of a catalog.
+     */
+    interface Compiler {
+        /**
+         * Return rotor #K of my catalog.
+         */
+        Rotor compile(int k);
+    }
+
+    /**
+     * A catalog of rotors #0 .. NAMES.length - 1, where rotor #K is
+     * named NAMES[K], has kind KINDS[K], and is built when needed by
+     * COMPILER.  If two rotors have the same name, the first is used.
+     */
+    RotorCatalog(String[] names, byte[] kinds, Compiler compiler) {
+        _names = names;
+        _kinds = kinds;
+        _compiler = compiler;
+        _rotors = new AtomicReferenceArray<Rotor>(names.length);
+        _index = new HashMap<String, Integer>(names.length * 2);
+        for (int k = names.length - 1; k >= 0; k -= 1) {
+            _index.put(names[k], k);
+        }
+    }
+
+    /**
+     * A catalog of ROTORS, which are already built.
+     */
+    RotorCatalog(Collection<Rotor> rotors) {
+        this(namesOf(rotors), kindsOf(rotors), null);
+        int k = 0;
+        for (Rotor rotor : rotors) {
+            _rotors.set(k, rotor);
+            k += 1;
+        }
+    }
+
+    /**
+     * Return the names of ROTORS, in order.
+     */
+    private static String[] namesOf(Collection<Rotor> rotors) {
+        String[] result = new String[rotors.size()];
+        int k = 0;
+        for (Rotor rotor : rotors) {
+            result[k] = rotor.name();
+            k += 1;
+        }
+        return result;
+    }
+
+    /**
+     * Return the kinds of ROTORS, in order.
+     */
+    private static byte[] kindsOf(Collection<Rotor> rotors) {
+        byte[] result = new byte[rotors.size()];
+        int k = 0;
+        for (Rotor rotor : rotors) {
+            result[k] = (byte) kindOf(rotor);
+            k += 1;
+        }
+        return result;
+    }
+
+    /**
+     * Return the number of rotors I hold.
+     */
+    int size() {
+        return _names.length;
+    }
+
+    /**
+     * Return the name of rotor #K.
+     */
+    String name(int k) {
+        return _names[k];
+    }
+
+    /**
+     * Return true iff I have a rotor named NAME.
+     */
+    boolean contains(String name) {
+        return _index.containsKey(name);
+    }
+
+    /**
+     * Return the kind (MOVING, FIXED or REFLECTOR) of my rotor named
+     * NAME, or -1 if I have none.
+     */
+    int kind(String name) {
+        Integer k = _index.get(name);
+        return k == null ? -1 : _kinds[k];
+    }
+
+    /**
+     * Return my rotor named NAME, building it if need be.
+     */
+    Rotor rotor(String name) {
+        Integer k = _index.get(name);
+        if (k == null) {
+            throw error("unknown rotor %s", name);
+        }
+        return rotor(k);
+    }
+
+    /**
+     * Return rotor #K, building it if need be.
+     */
+    Rotor rotor(int k) {
+        Rotor result = _rotors.get(k);
+        if (result == null) {
+            _rotors.compareAndSet(k, null, _compiler.compile(k));
+            result = _rotors.get(k);
+        }
+        return result;
+    }
+
+    /**
+     * Return the kind of ROTOR.
+     */
+    static int kindOf(Rotor rotor) {
+        return rotor.rotates() ? MOVING
+            : rotor.reflecting() ? REFLECTOR : FIXED;
+    }
+
+    /**
+     * Kinds of rotor.
+     */
+    static final int MOVING = 0, FIXED = 1, REFLECTOR = 2;
+
+    /**
+     * Names of my rotors, by number.
+     */
+    private final String[] _names;
+
+    /**
+     * Kinds of my rotors, by number.
+     */
+    private final byte[] _kinds;
+
+    /**
+     * Numbers of my rotors, by name.
+     */
+    private final HashMap<String, Integer> _index;
+
+    /**
+     * Builder of my rotors, or null if they are all built.
+     */
+    private final Compiler _compiler;
+
+    /**
+     * My rotors that have been built, by number.
+     */
+    private final AtomicReferenceArray<Rotor> _rotors;
+
+}
@@ -0,0 +1,116 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of machines already set up from setting lines, keyed
+ * by setting line, which discards the least recently used machine when
+ * it is full.  A machine taken from the cache is a copy at its original
+ * positions, so it is set up exactly as if its setting line had just
+ * been applied.  The cache counts its hits and misses, so that its
+ * capacity can be chosen.  Any number of threads may share a cache.
+ *
+ * @author Yuanshan Chen
+ */
+class SettingCache {
+
+    /**
+     * A cache holding at most CAPACITY machines.  A cache with capacity
+     * 0 holds none, but still counts misses.
+     */
+    SettingCache(int capacity) {
+        _capacity = Math.max(0, capacity);
+        _machines = new LinkedHashMap<String, Machine>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Machine> eldest) {
+                return size() > _capacity;
+            }
+        };
+    }
+
+    /**
+     * Return a copy of the machine set up from setting LINE, or null if
+     * I do not have one.
+     */
+    synchronized Machine get(String line) {
+        Machine result = _machines.get(key(line));
+        if (result == null) {
+            _misses += 1;
+            return null;
+        }
+        _hits += 1;
+        return result.copy();
+    }
+
+    /**
+     * Remember MACHINE, which has just been set up from setting LINE.
+     */
+    synchronized void put(String line, Machine machine) {
+        if (_capacity > 0) {
+            _machines.put(key(line), machine.copy());
+        }
+    }
+
+    /**
+     * Forget all my machines.
+     */
+    synchronized void clear() {
+        _machines.clear();
+    }
+
+    /**
+     * Return the number of lookups that found a machine.
+     */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /**
+     * Return the number of lookups that found no machine.
+     */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /**
+     * Return the number of machines I hold.
+     */
+    synchronized int size() {
+        return _machines.size();
+    }
+
+    /**
+     * Return the key for setting LINE: the line without trailing blanks,
+     * which Main ignores.
+     */
+    static String key(String line) {
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) == ' ') {
+            end -= 1;
+        }
+        return line.substring(0, end);
+    }
+
+    /**
+     * Capacity used when none is given.
+     */
+    static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Largest number of machines I hold.
+     */
+    private final int _capacity;
+
+    /**
+     * My machines, by key, least recently used first.
+     */
+    private final LinkedHashMap<String, Machine> _machines;
+
+    /**
+     * Lookups that found, and did not find, a machine.
+     */
+    private long _hits, _misses;
+
+}
@@ -0,0 +1,160 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Tables of the whole path of a character through a machine's rotors,
+ * from the rightmost rotor through the reflector and back, for every
+ * state of its rotating rotors.  With such a table a machine converts a
+ * character with one lookup (plus the plugboard).  A table depends only
+ * on the wirings in each slot, which slots rotate, and the positions of
+ * the slots that do not; rings affect only stepping and the starting
+ * state.  Tables are built in parallel and shared by all machines in a
+ * JVM, and are only kept while their total size is within a budget:
+ * the system property enigma.tableBudget, in bytes.
+ *
+ * A table is indexed by state * N + C, where N is the alphabet size, C
+ * is the character entering the rightmost rotor, and state is the sum
+ * over the rotating slots of the slot's position times N to the power
+ * of the number of rotating slots to its right.  Entries are bytes, so
+ * alphabets are limited to 256 characters.
+ *
+ * @author Yuanshan Chen
+ */
+class StateTable {
+
+    /**
+     * Return the table for a machine with rotors ROTORS, whose rotors
+     * are at positions POSITIONS, and whose rotating slots are MOVING,
+     * in increasing order, the last of which must be the rightmost
+     * slot.  Return null if there can be no such table within my budget.
+     */
+    static byte[] table(Rotor[] rotors, int[] positions, int[] moving) {
+        int last = rotors.length - 1;
+        int n = rotors[0].size();
+        if (n > MAX_ALPHABET || moving.length == 0
+            || moving[moving.length - 1] != last) {
+            return null;
+        }
+        long entries = n;
+        for (int k = 0; k < moving.length; k += 1) {
+            entries *= n;
+            if (entries > Math.min(BUDGET, Integer.MAX_VALUE)) {
+                return null;
+            }
+        }
+        List<Object> key = key(rotors, positions, moving);
+        synchronized (TABLES) {
+            byte[] result = TABLES.get(key);
+            if (result != null) {
+                return result;
+            }
+        }
+        byte[] result = build(rotors, positions, moving, (int) entries);
+        synchronized (TABLES) {
+            byte[] old = TABLES.get(key);
+            if (old != null) {
+                return old;
+            }
+            TABLES.put(key, result);
+            _size += result.length;
+            Iterator<byte[]> eldest = TABLES.values().iterator();
+            while (_size > BUDGET) {
+                _size -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the state of a machine whose rotating slots are MOVING and
+     * whose rotors are at POSITIONS, leaving out the rightmost slot: the
+     * index of its first entry in its table, over N.
+     */
+    static int stateBase(int[] positions, int[] moving, int n) {
+        int state = 0, stride = n;
+        for (int k = moving.length - 2; k >= 0; k -= 1) {
+            state += positions[moving[k]] * stride;
+            stride *= n;
+        }
+        return state;
+    }
+
+    /**
+     * Return the key of the table for ROTORS, POSITIONS and MOVING, as
+     * for table.
+     */
+    private static List<Object> key(Rotor[] rotors, int[] positions,
+                                    int[] moving) {
+        ArrayList<Object> key = new ArrayList<Object>();
+        int m = 0;
+        for (int k = 0; k < rotors.length; k += 1) {
+            key.add(rotors[k].permutation());
+            if (m < moving.length && moving[m] == k) {
+                key.add(-1);
+                m += 1;
+            } else {
+                key.add(positions[k]);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Return a new table of ENTRIES entries for ROTORS, POSITIONS and
+     * MOVING, as for table.
+     */
+    private static byte[] build(Rotor[] rotors, int[] positions,
+                                int[] moving, int entries) {
+        int n = rotors[0].size();
+        int last = rotors.length - 1;
+        byte[] result = new byte[entries];
+        IntStream.range(0, entries / n).parallel().forEach(state -> {
+            int[] posns = positions.clone();
+            for (int k = moving.length - 1, s = state; k >= 0; k -= 1) {
+                posns[moving[k]] = s % n;
+                s /= n;
+            }
+            for (int c = 0; c < n; c += 1) {
+                int t = c;
+                for (int i = last; i >= 0; i -= 1) {
+                    t = rotors[i].convertForward(t, posns[i]);
+                }
+                for (int i = 1; i <= last; i += 1) {
+                    t = rotors[i].convertBackward(t, posns[i]);
+                }
+                result[state * n + c] = (byte) t;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Largest alphabet whose indices fit in a table entry.
+     */
+    static final int MAX_ALPHABET = 256;
+
+    /**
+     * Most bytes of tables kept: the system property
+     * enigma.tableBudget, if set.
+     */
+    static final long BUDGET = Long.getLong("enigma.tableBudget", 64 << 20);
+
+    /**
+     * Tables kept, by key, least recently used first.
+     */
+    private static final Map<List<Object>, byte[]> TABLES =
+        new LinkedHashMap<List<Object>, byte[]>(16, 0.75f, true);
+
+    /**
+     * Total bytes in TABLES.
+     */
+    private static long _size;
+
+}
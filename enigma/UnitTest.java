@@ -3,7 +3,32 @@ package enigma;
 import org.junit.Test;
 import ucb.junit.textui;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 import static org.junit.Assert.*;
 
@@ -19,7 +44,8 @@ public class UnitTest {
      * the arguments of runClasses to run other JUnit tests.
      */
     public static void main(String[] ignored) {
-        textui.runClasses(PermutationTest.class, MovingRotorTest.class);
+        textui.runClasses(PermutationTest.class, MovingRotorTest.class,
+                          UnitTest.class);
     }
 
     @Test
@@ -33,7 +59,25 @@ public class UnitTest {
         assertEquals(2, al1.toInt('C'));
     }
 
-    private Alphabet alphabet;
+    @Test
+    public void testSparseAlphabet() {
+        String chs = "A\u4e00\u00e9Z\ud83d\ude00";
+        Alphabet al2 = new Alphabet(chs);
+        assertEquals(5, al2.size());
+        assertEquals(1, al2.toInt('\u4e00'));
+        assertEquals(4, al2.toIndex(0x1f600));
+        assertEquals(0x1f600, al2.toCodePoint(4));
+        assertTrue(al2.containsCodePoint(0x1f600));
+        assertFalse(al2.contains('B'));
+        assertEquals(-1, al2.toIndex(0x1f601));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicateAlphabet() {
+        new Alphabet("ABCA");
+    }
+
+    private Alphabet alphabet = new Alphabet();
     private String a = "(AE)(BN)(CK)(DQ)(FU)(GY)(HW)(IJ)(LO)(MP)(RX)(SZ)(TV)";
     Permutation pa = new Permutation(a, alphabet);
     Rotor B = new Rotor("B", pa);
@@ -55,6 +99,11 @@ public class UnitTest {
     Rotor iii = new Rotor("III", pd);
 
 
+    @Test(expected = EnigmaException.class)
+    public void testDuplicateCycle() {
+        new Permutation("(ABC) (DA)", alphabet);
+    }
+
     @Test
     public void testMachine() {
         ArrayList<Rotor> testrotors = new ArrayList<Rotor>();
@@ -65,6 +114,892 @@ public class UnitTest {
         testrotors.add(iii);
 
     }
-}
 
+    /**
+     * Return a naval machine set to "* B Beta I II III AAAA".
+     */
+    private Machine navalMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        rotors.add(new Reflector("B", new Permutation(a, alphabet)));
+        rotors.add(new FixedRotor("Beta", new Permutation(b, alphabet)));
+        rotors.add(new MovingRotor("I", new Permutation(c, alphabet), "Q"));
+        rotors.add(new MovingRotor("II", new Permutation(d, alphabet), "E"));
+        rotors.add(new MovingRotor("III", new Permutation(e, alphabet), "V"));
+        Machine m = new Machine(alphabet, 5, 3, rotors);
+        m.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+        m.setRotors("AAAA");
+        m.setPlugboard(new Permutation("", alphabet));
+        return m;
+    }
+
+    @Test
+    public void testBulkConvert() {
+        assertEquals("ILBDAAMTAZ", navalMachine().convert("HELLO WORLD"));
+        char[] buf = "xHELLO WORLD".toCharArray();
+        assertEquals(10, navalMachine().convert(buf, 1, 11, buf, 0));
+        assertEquals("ILBDAAMTAZ", new String(buf, 0, 10));
+        CharBuffer out = CharBuffer.allocate(20);
+        navalMachine().convert(CharBuffer.wrap("HELLO WORLD"), out);
+        out.flip();
+        assertEquals("ILBDAAMTAZ", out.toString());
+    }
+
+    @Test
+    public void testBulkConvertOverflow() {
+        char[] backing = "..........".toCharArray();
+        Machine m = navalMachine();
+        CharBuffer in = CharBuffer.wrap("HELLOWORLD");
+        try {
+            m.convert(in, CharBuffer.wrap(backing, 0, 3));
+            fail();
+        } catch (BufferOverflowException excp) {
+            assertEquals("..........", new String(backing));
+            assertEquals(0, in.position());
+        }
+        assertEquals("ILBDAAMTAZ", m.convert("HELLO WORLD"));
+    }
+
+    @Test
+    public void testSharedDefinition() {
+        Machine m = navalMachine();
+        Machine other = m.definition().newMachine();
+        other.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+        other.setRotors("AAAA");
+        other.setrings("BCDE");
+        other.setPlugboard(new Permutation("(AZ)", alphabet));
+        assertEquals("ILBDAAMTAZ", m.convert("HELLO WORLD"));
+        assertEquals("ILBDAAMTAZ", navalMachine().convert("HELLO WORLD"));
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.percentile(0.5));
+        for (long us = 1; us <= 1000; us += 1) {
+            h.record(us * 1000);
+        }
+        assertEquals(1000, h.count());
+        assertEquals(1, h.percentile(0.0));
+        long median = h.percentile(0.5);
+        assertTrue(median >= 500 && median <= 500 + 500 / 8);
+        long max = h.percentile(1.0);
+        assertTrue(max >= 1000 && max <= 1000 + 1000 / 8);
+        for (int k = 0; k < 100; k += 1) {
+            assertEquals(k, LatencyHistogram.bucket(
+                LatencyHistogram.upperBound(k)));
+        }
+    }
+
+    @Test
+    public void testMetrics() throws IOException {
+        Path input =
+            testingDirectory().resolve("correct").resolve("testmore.in");
+        String[] modes = {"--lines", "--stream", "--mmap", "--sections",
+                          "--parallel"};
+        for (String mode : modes) {
+            EnigmaMetrics metrics = new EnigmaMetrics();
+            if (mode.equals("--lines")) {
+                runMain(metrics, input);
+            } else {
+                runMain(metrics, input, mode);
+            }
+            assertEquals(mode, 550, metrics.getCharacters());
+            assertEquals(mode, 2, metrics.getMessages());
+            assertEquals(mode, 1, metrics.getSettingCacheHits());
+            assertEquals(mode, 1, metrics.getSettingCacheMisses());
+            long size = metrics.getMessageSizeP50();
+            assertTrue(mode, size >= 275 && size <= 275 + 275 / 8);
+            assertEquals(mode, size, metrics.getMessageSizeMax());
+            assertTrue(mode, metrics.getConfigMillis() > 0);
+            assertTrue(mode, metrics.getConvertMillis() > 0);
+            metrics.reset();
+            assertEquals(mode, 0, metrics.getCharacters());
+            assertEquals(mode, 0, metrics.getMessages());
+            assertEquals(mode, 0, metrics.getSettingCacheHits());
+            assertTrue(mode, metrics.getConvertMillis() == 0);
+        }
+    }
+
+    @Test
+    public void testMetricsPublished() throws Exception {
+        EnigmaMetrics metrics = new EnigmaMetrics();
+        metrics.converted(1000, 2500000);
+        metrics.message(1000);
+        metrics.phase(EnigmaMetrics.CONFIG, 1500000);
+        metrics.settingCache(true);
+        metrics.settingCache(false);
+        metrics.settingCache(false);
+        String summary = metrics.summary();
+        assertTrue(summary, SUMMARY.matcher(summary).matches());
+        assertTrue(summary, summary.contains(
+            " chars=1000 msgs=1 "));
+        assertTrue(summary, summary.contains(
+            " config_ms=1.500 setting_ms=0.000 convert_ms=2.500 "
+            + "output_ms=0.000 "));
+        assertTrue(summary, summary.endsWith(
+            " cache_hits=1 cache_misses=2"));
+
+        ObjectName name = new ObjectName("enigma:type=MetricsTest");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertTrue(metrics.register(name.toString()));
+        try {
+            assertEquals(1000L, server.getAttribute(name, "Characters"));
+            assertEquals(2L, server.getAttribute(name, "SettingCacheMisses"));
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "Characters"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+
+        metrics.converted(7, 0);
+        Path file = Files.createTempFile("enigma", ".metrics");
+        ScheduledExecutorService dumper =
+            metrics.dumpEvery(file.toString(), 1);
+        try {
+            for (int k = 0; k < 100 && Files.size(file) == 0; k += 1) {
+                Thread.sleep(50);
+            }
+        } finally {
+            dumper.shutdownNow();
+        }
+        try {
+            metrics.dump(file.toString());
+            List<String> lines = Files.readAllLines(file);
+            assertTrue(lines.size() >= 2);
+            for (String line : lines) {
+                assertTrue(line, SUMMARY.matcher(line).matches());
+                assertTrue(line, line.contains(" chars=7 msgs=0 "));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * The form of EnigmaMetrics.summary(), which metrics files hold.
+     */
+    private static final Pattern SUMMARY = Pattern.compile(
+        "\\d{4}-\\d\\d-\\d\\dT\\d\\d:\\d\\d:\\d\\d chars=\\d+ msgs=\\d+ "
+        + "chars/s=\\d+ msgs/s=\\d+\\.\\d config_ms=\\d+\\.\\d{3} "
+        + "setting_ms=\\d+\\.\\d{3} convert_ms=\\d+\\.\\d{3} "
+        + "output_ms=\\d+\\.\\d{3} size_p50=\\d+ size_p90=\\d+ "
+        + "size_p99=\\d+ size_max=\\d+ cache_hits=\\d+ cache_misses=\\d+");
+
+    @Test
+    public void testSeek() {
+        Machine m = navalMachine();
+        int[] expected = new int[20000];
+        for (int k = 0; k < expected.length; k += 1) {
+            expected[k] = m.convert(k % 26);
+        }
+        for (int start : new int[] {0, 1, 25, 26, 676, 17577, 19990}) {
+            Machine s = navalMachine();
+            s.seek(start);
+            for (int k = start; k < start + 10; k += 1) {
+                assertEquals(expected[k], s.convert(k % 26));
+            }
+            assertEquals(start + 10, s.position());
+        }
+    }
+
+    @Test
+    public void testConcurrentSeek() {
+        long[] positions = {1000000007L, 123456789012L, 5L << 40};
+        int[][] expected = new int[positions.length][10];
+        for (int p = 0; p < positions.length; p += 1) {
+            Machine m = navalMachine();
+            m.seek(positions[p]);
+            for (int k = 0; k < 10; k += 1) {
+                expected[p][k] = m.convert(k);
+            }
+        }
+        for (int round = 0; round < 20; round += 1) {
+            Machine origin = navalMachine();
+            IntStream.range(0, 64).parallel().forEach(t -> {
+                int p = t % positions.length;
+                Machine m = origin.copy();
+                m.seek(positions[p]);
+                for (int k = 0; k < 10; k += 1) {
+                    assertEquals(expected[p][k], m.convert(k));
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testConfigParser() {
+        MachineDefinition d = new ConfigParser(
+            "ABCD 3 1\n R R (AB)(CD)\n F N\n M MC (ABC) (D)\n",
+            "t.conf").parse();
+        assertEquals(3, d.rotors().size());
+        assertEquals(1, d.rotor("R").permutation().permute(0));
+        assertEquals(0, d.rotor("F").permutation().permute(0));
+        assertEquals(2, d.rotor("M").permutation().permute(1));
+        d = new ConfigParser("ABCD 3 1\n R R (AB)\n M M (AE)\n",
+                             "t.conf").parse();
+        assertEquals(RotorCatalog.MOVING, d.catalog().kind("M"));
+        assertEquals(RotorCatalog.REFLECTOR, d.catalog().kind("R"));
+        assertEquals(-1, d.catalog().kind("X"));
+        d.rotor("R");
+        try {
+            d.rotor("M");
+            fail();
+        } catch (EnigmaException excp) {
+            assertEquals("t.conf:3:8: character 'E' of rotor M not in "
+                         + "alphabet", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void testMachineImage() throws IOException {
+        Path file = Files.createTempFile("enigma", ".img");
+        try {
+            MachineImage.write(navalMachine().definition(), file, "t.img");
+            assertTrue(MachineImage.isImage(file));
+            Machine m = MachineImage.read(file, "t.img").newMachine();
+            m.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+            m.setRotors("AAAA");
+            m.setPlugboard(new Permutation("", alphabet));
+            Machine expected = navalMachine();
+            for (int k = 0; k < 2000; k += 1) {
+                assertEquals(expected.convert(k % 26), m.convert(k % 26));
+            }
+            byte[] image = Files.readAllBytes(file);
+            int firstCodePoint = 24;
+            image[firstCodePoint] = 0x7f;
+            Files.write(file, image);
+            try {
+                MachineImage.read(file, "t.img");
+                fail();
+            } catch (EnigmaException excp) {
+                assertEquals("t.img: corrupt machine image",
+                             excp.getMessage());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testSettingCache() {
+        SettingCache cache = new SettingCache(2);
+        assertNull(cache.get("* a"));
+        Machine m = navalMachine();
+        cache.put("* a", m);
+        m.convert(0);
+        Machine hit = cache.get("* a  ");
+        assertNotSame(m, hit);
+        assertEquals(navalMachine().convert(0), hit.convert(0));
+        cache.put("* b", m);
+        cache.get("* a");
+        cache.put("* c", m);
+        assertNotNull(cache.get("* a"));
+        assertNull(cache.get("* b"));
+        assertEquals(2, cache.size());
+        assertEquals(3, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    public void testWiringPool() {
+        MachineDefinition d1 = new ConfigParser(
+            "ABCD 2 1 R R (AB)(CD) M MA (ABC)", "a.conf").parse();
+        MachineDefinition d2 = new ConfigParser(
+            "ABCD 2 1\n X R (DC) (BA)\n Y N (BCA)\n", "b.conf").parse();
+        assertSame(d1.alphabet(), d2.alphabet());
+        assertSame(d1.rotor("R").permutation(),
+                   d2.rotor("X").permutation());
+        assertSame(d1.rotor("M").permutation(),
+                   d2.rotor("Y").permutation());
+        assertNotSame(d1.rotor("R").permutation(),
+                      d1.rotor("M").permutation());
+    }
+
+    @Test
+    public void testDefaultEngine() {
+        Machine machine = new Machine(alphabet, 5, 3, new ArrayList<Rotor>());
+        assertEquals(System.getProperty("enigma.engine", "direct"),
+                     machine.engine());
+    }
+
+    @Test
+    public void testCompositeEngine() {
+        String[] notches = {"Q", "ABCDEFGHIJKLMNOPQRSTUVWXYZ"};
+        for (String notch : notches) {
+            ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+            rotors.add(new Reflector("B", new Permutation(a, alphabet)));
+            rotors.add(new FixedRotor("Beta", new Permutation(b, alphabet)));
+            rotors.add(new MovingRotor("I", new Permutation(c, alphabet),
+                                       "E"));
+            rotors.add(new MovingRotor("II", new Permutation(d, alphabet),
+                                       "V"));
+            rotors.add(new MovingRotor("III", new Permutation(e, alphabet),
+                                       notch));
+            Machine direct = new Machine(alphabet, 5, 3, rotors);
+            direct.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+            direct.setRotors("ADUO");
+            direct.setrings("BCDE");
+            direct.setPlugboard(new Permutation("(AQ) (EP)", alphabet));
+            assertSameAsDirect(direct, "composite");
+        }
+    }
+
+    @Test
+    public void testTableEngine() {
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        rotors.add(new Reflector("B", new Permutation(a, alphabet)));
+        rotors.add(new FixedRotor("Beta", new Permutation(b, alphabet)));
+        rotors.add(new MovingRotor("I", new Permutation(c, alphabet), "E"));
+        rotors.add(new MovingRotor("II", new Permutation(d, alphabet), "V"));
+        rotors.add(new MovingRotor("III", new Permutation(e, alphabet),
+                                   "QZ"));
+        Machine direct = new Machine(alphabet, 5, 3, rotors);
+        direct.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+        direct.setPlugboard(new Permutation("(AQ) (EP)", alphabet));
+        String[] settings = {"ADUO", "BDUO", "AAAA"};
+        Machine table = null;
+        for (String setting : settings) {
+            direct.setRotors(setting);
+            direct.setrings("BCDE");
+            table = assertSameAsDirect(direct, "table");
+        }
+        direct.setRotors("ADUO");
+        table.setRotors("ADUO");
+        assertSameConversions(direct, table, 1000);
+    }
+
+    @Test
+    public void testTreeEngine() {
+        String[] names = {"I", "II", "III", "IV", "V", "VI", "VII", "VIII"};
+        String[] wirings = {c, d, e, b};
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        rotors.add(new Reflector("B", new Permutation(a, alphabet)));
+        for (int k = 0; k < names.length; k += 1) {
+            rotors.add(new MovingRotor(names[k],
+                                       new Permutation(wirings[k % 4],
+                                                       alphabet),
+                                       k % 2 == 0 ? "Q" : "AEIMQUY"));
+        }
+        Machine direct = new Machine(alphabet, 9, 8, rotors);
+        direct.insertRotors(new String[] {
+            "B", "I", "II", "III", "IV", "V", "VI", "VII", "VIII"
+        });
+        direct.setRotors("ADUOQZMA");
+        direct.setrings("BCDEFGHI");
+        direct.setPlugboard(new Permutation("(AQ) (EP)", alphabet));
+        Machine tree = assertSameAsDirect(direct, "tree");
+        direct.setRotors("ZZZZZZZZ");
+        tree.setRotors("ZZZZZZZZ");
+        assertSameConversions(direct, tree, 1000);
+    }
+
+    /**
+     * Set DIRECT to the direct engine, and assert that a copy of it
+     * using ENGINE converts as it does: over 20000 keystrokes, and over
+     * 100 more after both seek to the same keystroke.  Return the copy.
+     */
+    private Machine assertSameAsDirect(Machine direct, String engine) {
+        direct.setEngine("direct");
+        Machine other = direct.copy();
+        other.setEngine(engine);
+        assertEquals(engine, other.engine());
+        assertSameConversions(direct, other, 20000);
+        direct.seek(12345);
+        other.seek(12345);
+        assertSameConversions(direct, other, 100);
+        return other;
+    }
+
+    /**
+     * Assert that machines M1 and M2 convert the next COUNT keystrokes
+     * alike.
+     */
+    private void assertSameConversions(Machine m1, Machine m2, int count) {
+        for (int k = 0; k < count; k += 1) {
+            assertEquals(m1.convert(k % 26), m2.convert(k % 26));
+        }
+    }
+
+    @Test
+    public void testStreamMode() throws IOException {
+        assertSameAsLineMode("--stream");
+    }
+
+    @Test
+    public void testMmapMode() throws IOException {
+        assertSameAsLineMode("--mmap");
+    }
+
+    @Test
+    public void testParallelMode() throws IOException {
+        assertSameAsLineMode("--parallel");
+        Path dir = Files.createTempDirectory("enigma");
+        Path config = dir.resolve("default.conf");
+        Path input = dir.resolve("long.in");
+        Files.copy(Paths.get(defaultConfig()), config);
+        try {
+            Random rand = new Random(42);
+            StringBuilder text = new StringBuilder();
+            for (String setting : MESSAGE_SETTINGS) {
+                text.append(setting).append('\n');
+                for (int line = 0; line < 2; line += 1) {
+                    int length = 2 * Main.CHUNK_SIZE + 1000 + line;
+                    for (int k = 0; k < length; k += 1) {
+                        text.append(rand.nextInt(6) == 0 ? ' '
+                                    : (char) ('A' + rand.nextInt(26)));
+                    }
+                    text.append('\n');
+                }
+            }
+            Files.write(input, text.toString().getBytes("US-ASCII"));
+            String[] expected = runMain(input);
+            assertNull(expected[1]);
+            String[] actual = runMain(input, "--parallel");
+            assertNull(actual[1]);
+            assertEquals(expected[0], actual[0]);
+        } finally {
+            Files.delete(input);
+            Files.delete(config);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testSectionsMode() throws IOException {
+        assertSameAsLineMode("--sections");
+    }
+
+    @Test
+    public void testRangeReader() throws IOException {
+        Path file = Files.createTempFile("enigma", ".in");
+        Path sidecar = Paths.get(file + MessageIndex.SUFFIX);
+        try {
+            String[] texts = messageTexts();
+            writeMessages(file, MESSAGE_SETTINGS, texts, "\r\n");
+            assertRanges(file, texts);
+            RangeReader reader = new RangeReader(defaultConfig(),
+                                                 file.toString());
+            try {
+                reader.read(0, 1, RangeReader.MAX_RANGE + 2L);
+                fail();
+            } catch (EnigmaException excp) {
+                assertEquals(String.format(
+                    "range 1-%d longer than %d characters",
+                    RangeReader.MAX_RANGE + 2L, RangeReader.MAX_RANGE),
+                    excp.getMessage());
+            }
+            RangeReader.writeIndex(file.toString());
+            assertNotNull(MessageIndex.read(sidecar, file));
+            assertRanges(file, texts);
+
+            String[] settings = {
+                MESSAGE_SETTINGS[1], MESSAGE_SETTINGS[0], MESSAGE_SETTINGS[1]
+            };
+            String[] moreTexts = { texts[1], texts[0], "HELLOWORLD" };
+            writeMessages(file, settings, moreTexts, "\n");
+            assertNull(MessageIndex.read(sidecar, file));
+            assertRanges(file, moreTexts);
+        } finally {
+            Files.deleteIfExists(sidecar);
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testRangePatcher() throws IOException {
+        Path file = Files.createTempFile("enigma", ".in");
+        Path sidecar = Paths.get(file + MessageIndex.SUFFIX);
+        try {
+            String[] texts = messageTexts();
+            writeMessages(file, MESSAGE_SETTINGS, texts, "\r\n");
+            RangeReader.writeIndex(file.toString());
+            int from = MessageIndex.STRIDE - 3;
+            RangePatcher patcher = new RangePatcher(defaultConfig(),
+                                                    file.toString());
+            patcher.patch(1, from - 10, "HELLO WORLD");
+            patcher.patch(MESSAGE_SETTINGS[0], from, "ENIGMA");
+            texts[1] = texts[1].substring(0, from - 10) + "HELLOWORLD"
+                + texts[1].substring(from);
+            texts[0] = texts[0].substring(0, from) + "ENIGMA"
+                + texts[0].substring(from + 6);
+            assertNotNull(MessageIndex.read(sidecar, file));
+            assertRanges(file, texts);
+
+            writeMessages(file, MESSAGE_SETTINGS, texts, "\n");
+            try {
+                patcher.patch(0, 5, "HELLO");
+                fail();
+            } catch (EnigmaException excp) {
+                assertRanges(file, texts);
+            }
+        } finally {
+            Files.deleteIfExists(sidecar);
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testDaemon() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path socket = dir.resolve("enigma.sock");
+        Path big = dir.resolve("big.in");
+        Path config = dir.resolve("default.conf");
+        Files.copy(Paths.get(defaultConfig()), config);
+        EnigmaDaemon daemon = new EnigmaDaemon(socket);
+        Thread server = new Thread(daemon::serve);
+        server.start();
+        try {
+            String[] texts = messageTexts();
+            writeMessages(big, MESSAGE_SETTINGS,
+                          new String[] { texts[0].repeat(8), texts[1] },
+                          "\n");
+            Path[] inputs = {
+                testingDirectory().resolve("correct").resolve("trivial.in"),
+                big,
+                testingDirectory().resolve("error").resolve("errorc.in"),
+            };
+            for (Path input : inputs) {
+                String[] expected = runMain(input);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ByteArrayOutputStream err = new ByteArrayOutputStream();
+                int status = EnigmaClient.run(
+                    socket, new String[] { config.toString() },
+                    new ByteArrayInputStream(Files.readAllBytes(input)),
+                    out, err);
+                if (expected[1] == null) {
+                    assertEquals(0, status);
+                    assertEquals(expected[0], out.toString());
+                    assertEquals("", err.toString());
+                } else {
+                    assertEquals(1, status);
+                    assertEquals(String.format("Error: %s%n", expected[1]),
+                                 err.toString());
+                }
+            }
+        } finally {
+            daemon.stop();
+            server.join();
+            Files.deleteIfExists(big);
+            Files.delete(config);
+            Files.deleteIfExists(socket);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testServer() throws IOException, InterruptedException {
+        EnigmaServer server = new EnigmaServer(defaultConfig(), 0);
+        try {
+            String base = "http://127.0.0.1:" + server.port();
+            Path correct = testingDirectory().resolve("correct");
+            Path trivial = correct.resolve("trivial.in");
+            Path testmore = correct.resolve("testmore.in");
+            Path bad = testingDirectory().resolve("error")
+                .resolve("errorc.in");
+            String message = Files.readAllLines(trivial).get(0) + "\n"
+                + Files.readAllLines(trivial).get(1) + "\n";
+            String[] reply = post(base + "/encrypt", message);
+            assertEquals("200", reply[0]);
+            assertEquals(runMain(trivial)[0].split("\\R")[0],
+                         reply[1].trim());
+            reply = post(base + "/encrypt", Files.readString(trivial));
+            assertEquals("400", reply[0]);
+            assertEquals(String.format("Error: only one setting line "
+                                       + "allowed%n"), reply[1]);
+            String expected = runMain(testmore)[0];
+            String body = Files.readString(testmore);
+            IntStream.range(0, 8).parallel().forEach(k -> {
+                try {
+                    String[] r = post(base + "/batch", body);
+                    assertEquals("200", r[0]);
+                    assertEquals(expected, r[1]);
+                } catch (IOException | InterruptedException excp) {
+                    throw new AssertionError(excp);
+                }
+            });
+            reply = post(base + "/batch", Files.readString(bad));
+            assertEquals("400", reply[0]);
+            assertEquals(String.format("Error: %s%n", runMain(bad)[1]),
+                         reply[1]);
+            HttpResponse<String> stats = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(URI.create(base + "/stats")).build(),
+                HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, stats.statusCode());
+            String[] lines = stats.body().split("\n");
+            assertEquals("endpoint count p50_us p90_us p99_us p999_us "
+                         + "max_us", lines[0]);
+            assertTrue(lines[1], lines[1].startsWith("/encrypt 2 "));
+            assertTrue(lines[2], lines[2].startsWith("/batch 9 "));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testEvents() throws IOException {
+        Path input =
+            testingDirectory().resolve("correct").resolve("testmore.in");
+        List<Long> sizes = new ArrayList<Long>();
+        int settings = 0;
+        for (String line : Files.readAllLines(input)) {
+            if (line.startsWith("*")) {
+                settings += 1;
+                sizes.add(0L);
+            } else {
+                int last = sizes.size() - 1;
+                sizes.set(last, sizes.get(last)
+                          + line.replace(" ", "").length());
+            }
+        }
+        sizes.sort(null);
+        String[] modes = {"", "--stream", "--mmap", "--sections",
+                          "--parallel"};
+        for (String mode : modes) {
+            List<RecordedEvent> events = recordEvents(input, mode);
+            int configs = 0, rotors = 0, applied = 0, cached = 0;
+            List<Long> converted = new ArrayList<Long>();
+            for (RecordedEvent event : events) {
+                switch (event.getEventType().getName()) {
+                case "enigma.ConfigRead":
+                    configs += 1;
+                    assertEquals(26, event.getInt("alphabetSize"));
+                    assertEquals(5, event.getInt("slots"));
+                    break;
+                case "enigma.RotorRead":
+                    rotors += 1;
+                    break;
+                case "enigma.SettingApplied":
+                    applied += 1;
+                    cached += event.getBoolean("cached") ? 1 : 0;
+                    assertEquals("B Beta III IV I",
+                                 event.getString("rotors"));
+                    break;
+                default:
+                    assertEquals("B Beta III IV I",
+                                 event.getString("rotors"));
+                    converted.add(event.getLong("characters"));
+                    break;
+                }
+            }
+            assertEquals(mode, 1, configs);
+            assertTrue(mode, rotors >= 5);
+            assertEquals(mode, settings, applied);
+            assertEquals(mode, settings - 1, cached);
+            converted.sort(null);
+            assertEquals(mode, sizes, converted);
+        }
+    }
+
+    /**
+     * Setting lines of the messages written by writeMessages.
+     */
+    private static final String[] MESSAGE_SETTINGS = {
+        "* B Beta III IV I AXLE (YF) (ZH)",
+        "* C Gamma I II V QRST BCDE (AQ)"
+    };
+
+    /**
+     * Return the texts of two messages: one with a partial last stride
+     * of characters, and one exactly a stride long.
+     */
+    private static String[] messageTexts() {
+        Random rand = new Random(42);
+        String[] result = new String[2];
+        int[] lengths = { 2 * MessageIndex.STRIDE + 7, MessageIndex.STRIDE };
+        for (int m = 0; m < result.length; m += 1) {
+            char[] text = new char[lengths[m]];
+            for (int k = 0; k < text.length; k += 1) {
+                text[k] = (char) ('A' + rand.nextInt(26));
+            }
+            result[m] = new String(text);
+        }
+        return result;
+    }
+
+    /**
+     * Write to FILE a blank line and then, for each K, setting line
+     * SETTINGS[K] followed by the encoding of TEXTS[K] in groups of five
+     * characters, twelve groups to a line, and a blank line.  Lines end
+     * with EOL.
+     */
+    private static void writeMessages(Path file, String[] settings,
+                                      String[] texts, String eol)
+        throws IOException {
+        Main main = new Main(new String[] { defaultConfig() });
+        StringBuilder out = new StringBuilder(eol);
+        for (int m = 0; m < texts.length; m += 1) {
+            String code = main.configure(settings[m]).convert(texts[m]);
+            out.append(settings[m]).append(eol);
+            for (int k = 0; k < code.length(); k += 5) {
+                out.append(code, k, Math.min(k + 5, code.length()));
+                out.append(k % 60 == 55 || k + 5 >= code.length()
+                           ? eol : " ");
+            }
+            out.append(eol);
+        }
+        Files.write(file, out.toString().getBytes("US-ASCII"));
+    }
+
+    /**
+     * Check that RangeReader decodes ranges of the messages in FILE,
+     * including ranges that meet or cross the strides of its index, to
+     * the corresponding parts of TEXTS.
+     */
+    private static void assertRanges(Path file, String[] texts) {
+        RangeReader reader = new RangeReader(defaultConfig(),
+                                             file.toString());
+        assertEquals(texts.length, reader.index().size());
+        int stride = MessageIndex.STRIDE;
+        for (int m = 0; m < texts.length; m += 1) {
+            int count = texts[m].length();
+            assertEquals(count, reader.index().charCount(m));
+            int[] froms = { 0, 1, stride - 1, stride, stride + 1, count - 1 };
+            for (int from : froms) {
+                int[] tos = { from, from + 1, from + stride + 2, count };
+                for (int to : tos) {
+                    if (from <= to && to <= count) {
+                        assertEquals(texts[m].substring(from, to),
+                                     reader.read(m, from, to));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the name of testing/correct/default.conf.
+     */
+    private static String defaultConfig() {
+        return testingDirectory().resolve("correct")
+            .resolve("default.conf").toString();
+    }
+
+    /**
+     * Check that Main with option OPTION produces the same output as
+     * without it for every input in testing/correct, and the same error
+     * message for every input in testing/error.
+     */
+    private static void assertSameAsLineMode(String option)
+        throws IOException {
+        for (String kind : new String[] {"correct", "error"}) {
+            Path dir = testingDirectory().resolve(kind);
+            try (DirectoryStream<Path> inputs =
+                     Files.newDirectoryStream(dir, "*.in")) {
+                for (Path input : inputs) {
+                    String[] expected = runMain(input);
+                    String[] actual = runMain(input, option);
+                    if (kind.equals("correct")) {
+                        assertNull(expected[1]);
+                        assertEquals(input.toString(), expected[0],
+                                     actual[0]);
+                    } else {
+                        assertNotNull(expected[1]);
+                    }
+                    assertEquals(input.toString(), expected[1], actual[1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the status, as a string, and body of the response to
+     * posting BODY to URL.
+     */
+    private static String[] post(String url, String body)
+        throws IOException, InterruptedException {
+        HttpResponse<String> response = HttpClient.newHttpClient().send(
+            HttpRequest.newBuilder(URI.create(url))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build(),
+            HttpResponse.BodyHandlers.ofString());
+        return new String[] {
+            Integer.toString(response.statusCode()), response.body()
+        };
+    }
+
+    /**
+     * Return the Enigma events recorded while running Main on INPUT as
+     * runMain does, with option MODE unless it is empty.
+     */
+    private static List<RecordedEvent> recordEvents(Path input, String mode)
+        throws IOException {
+        Path file = Files.createTempFile("enigma", ".jfr");
+        try {
+            try (Recording recording = new Recording()) {
+                for (String name : new String[] {
+                        "enigma.ConfigRead", "enigma.RotorRead",
+                        "enigma.SettingApplied", "enigma.MessageConverted"
+                    }) {
+                    recording.enable(name).withoutThreshold();
+                }
+                recording.start();
+                if (mode.isEmpty()) {
+                    runMain(input);
+                } else {
+                    runMain(input, mode);
+                }
+                recording.stop();
+                recording.dump(file);
+            }
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Return the output and error message (or null) of running Main with
+     * options OPTIONS on INPUT, using INPUT's configuration as
+     * test-correct does, and writing to a temporary file.
+     */
+    private static String[] runMain(Path input, String... options)
+        throws IOException {
+        return runMain(EnigmaMetrics.get(), input, options);
+    }
+
+    /**
+     * Return the output and error message (or null) of running Main as
+     * runMain(INPUT, OPTIONS) does, recording its work in METRICS.
+     */
+    private static String[] runMain(EnigmaMetrics metrics, Path input,
+                                    String... options) throws IOException {
+        String base = input.toString().replaceFirst("\\.in$", "");
+        Path config = Paths.get(base + ".conf");
+        if (!Files.exists(config)) {
+            config = input.resolveSibling("default.conf");
+        }
+        Path output = Files.createTempFile("enigma", ".out");
+        try {
+            String[] args = Arrays.copyOf(options, options.length + 3);
+            args[options.length] = config.toString();
+            args[options.length + 1] = input.toString();
+            args[options.length + 2] = output.toString();
+            String error = null;
+            Main main = null;
+            try {
+                main = new Main(args, null, System.in, System.out);
+                main.setMetrics(metrics);
+                main.process();
+            } catch (EnigmaException excp) {
+                error = excp.getMessage();
+            } finally {
+                if (main != null) {
+                    main.close();
+                }
+            }
+            return new String[] {
+                new String(Files.readAllBytes(output)), error
+            };
+        } finally {
+            Files.delete(output);
+        }
+    }
 
+    /**
+     * Return the testing directory, whether run from the top of the
+     * project or from its enigma directory.
+     */
+    private static Path testingDirectory() {
+        Path result = Paths.get("testing");
+        return Files.isDirectory(result) ? result : Paths.get("..", "testing");
+    }
+}
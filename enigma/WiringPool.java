@@ -0,0 +1,211 @@
+package enigma;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pools of alphabets and of rotor wirings (permutations), so that every
+ * configuration loaded in a JVM shares one copy of each distinct
+ * alphabet and wiring, whichever file it came from and however its
+ * cycles were written.  Alphabets and permutations are immutable once
+ * built, so sharing them is safe.  The pools hold their members weakly:
+ * a wiring that no loaded configuration uses any more is dropped.
+ *
+ * @author Yuanshan Chen
+ */
+class WiringPool {
+
+    /**
+     * Return the alphabet of the characters CHARS, as the Alphabet
+     * constructor would.
+     */
+    static Alphabet alphabet(String chars) {
+        Alphabet result = ALPHABETS.get(chars);
+        if (result == null) {
+            result = ALPHABETS.intern(chars, new Alphabet(chars));
+        }
+        return result;
+    }
+
+    /**
+     * Return the permutation of ALPHABET taking each index K to
+     * FORWARD[K], as the Permutation constructor would.  FORWARD may be
+     * kept.
+     */
+    static Permutation permutation(int[] forward, Alphabet alphabet) {
+        Wiring key = new Wiring(alphabet.chars(), forward);
+        Permutation result = WIRINGS.get(key);
+        if (result == null) {
+            result = WIRINGS.intern(key, new Permutation(forward, alphabet));
+        }
+        return result;
+    }
+
+    /**
+     * Return the permutation of ALPHABET taking each index K to
+     * FORWARD[K], whose inverse is INVERSE, as the Permutation
+     * constructor would.  FORWARD and INVERSE may be kept.
+     */
+    static Permutation permutation(int[] forward, int[] inverse,
+                                   Alphabet alphabet) {
+        Wiring key = new Wiring(alphabet.chars(), forward);
+        Permutation result = WIRINGS.get(key);
+        if (result == null) {
+            result = WIRINGS.intern(key,
+                                    new Permutation(forward, inverse,
+                                                    alphabet));
+        }
+        return result;
+    }
+
+    /**
+     * Return the number of distinct wirings pooled and still in use.
+     */
+    static int wirings() {
+        return WIRINGS.size();
+    }
+
+    /**
+     * The key of a wiring: the characters of its alphabet and its
+     * forward table.
+     */
+    private static class Wiring {
+
+        /**
+         * The key of the wiring FORWARD of the alphabet of CHARS.
+         */
+        Wiring(String chars, int[] forward) {
+            _chars = chars;
+            _forward = forward;
+            _hash = 31 * chars.hashCode() + Arrays.hashCode(forward);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Wiring)) {
+                return false;
+            }
+            Wiring other = (Wiring) obj;
+            return _hash == other._hash && _chars.equals(other._chars)
+                && Arrays.equals(_forward, other._forward);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /**
+         * Characters of the alphabet.
+         */
+        private final String _chars;
+
+        /**
+         * The forward table.
+         */
+        private final int[] _forward;
+
+        /**
+         * My hash code.
+         */
+        private final int _hash;
+    }
+
+    /**
+     * A map holding its values weakly, whose entries are removed once
+     * their values have been collected.
+     */
+    private static class Pool<K, V> {
+
+        /**
+         * Return my value for KEY, or null if I have none.
+         */
+        V get(K key) {
+            Entry<K, V> entry = _entries.get(key);
+            return entry == null ? null : entry.get();
+        }
+
+        /**
+         * Return my value for KEY, making it VALUE if I have none.
+         */
+        V intern(K key, V value) {
+            purge();
+            Entry<K, V> entry = new Entry<K, V>(key, value, _collected);
+            while (true) {
+                Entry<K, V> old = _entries.putIfAbsent(key, entry);
+                if (old == null) {
+                    return value;
+                }
+                V result = old.get();
+                if (result != null) {
+                    return result;
+                }
+                _entries.remove(key, old);
+            }
+        }
+
+        /**
+         * Return the number of my entries.
+         */
+        int size() {
+            purge();
+            return _entries.size();
+        }
+
+        /**
+         * Remove the entries whose values have been collected.
+         */
+        @SuppressWarnings("unchecked")
+        private void purge() {
+            Entry<K, V> entry;
+            while ((entry = (Entry<K, V>) _collected.poll()) != null) {
+                _entries.remove(entry._key, entry);
+            }
+        }
+
+        /**
+         * My entries, by key.
+         */
+        private final ConcurrentHashMap<K, Entry<K, V>> _entries =
+            new ConcurrentHashMap<>();
+
+        /**
+         * Entries whose values have been collected.
+         */
+        private final ReferenceQueue<V> _collected = new ReferenceQueue<>();
+    }
+
+    /**
+     * An entry of a Pool: a weak reference to a value that remembers
+     * its key.
+     */
+    private static class Entry<K, V> extends WeakReference<V> {
+
+        /**
+         * An entry for VALUE under KEY, queued on QUEUE once VALUE has
+         * been collected.
+         */
+        Entry(K key, V value, ReferenceQueue<V> queue) {
+            super(value, queue);
+            _key = key;
+        }
+
+        /**
+         * My key.
+         */
+        private final K _key;
+    }
+
+    /**
+     * Pooled alphabets, by their characters.
+     */
+    private static final Pool<String, Alphabet> ALPHABETS = new Pool<>();
+
+    /**
+     * Pooled wirings.
+     */
+    private static final Pool<Wiring, Permutation> WIRINGS = new Pool<>();
+
+}